@@ -0,0 +1,164 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It benchmarks Rule.appliesTo(), RuleTable.Entry.appliesTo() (AreaIndex) and Area.contains().
+ * areas is the number of Areas of the Rule, 64 blocks apart along X, shape their type and hits the percentage
+ * of blocks inside some Area (others are between them).
+ * @author LookyR
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AreaBenchmark {
+    
+    /**
+     * Number of blocks, power of 2
+     */
+    private static final int BLOCKS = 1024;
+    
+    /**
+     * Number of Areas
+     */
+    @Param({"1", "16", "256"})
+    public int areas;
+    
+    /**
+     * Type of Areas
+     */
+    @Param({"cuboid", "cylinder", "polygon"})
+    public String shape;
+    
+    /**
+     * Percentage of blocks inside some Area
+     */
+    @Param({"0", "50", "100"})
+    public int hits;
+    
+    /**
+     * UUID of the World
+     */
+    private UUID world;
+    
+    /**
+     * Areas of the Rule
+     */
+    private Area[] area;
+    
+    /**
+     * The Rule
+     */
+    private Rule rule;
+    
+    /**
+     * The Rule compiled for the World
+     */
+    private RuleTable.Entry entry;
+    
+    /**
+     * Coordinates of blocks, 3 ints each
+     */
+    private int[] blocks;
+    
+    /**
+     * Index of the next block
+     */
+    private int next;
+    
+    /**
+     * Creates Areas, the Rule and blocks
+     */
+    @Setup
+    public void setup() {
+        world = UUID.randomUUID();
+        area = new Area[areas];
+        for(int i = 0; i < areas; i++) {
+            int x = i * 64;
+            switch(shape) {
+                case "cuboid":
+                    area[i] = new Area(world, x - 16, 0, -16, x + 16, 128, 16, false);
+                    break;
+                case "cylinder":
+                    area[i] = new Area(world, x, 0, 16, false);
+                    break;
+                default:
+                    area[i] = new Area(world, new int[] {x - 16, x, x + 16, x}, new int[] {0, -16, 0, 16}, false);
+            }
+        }
+        rule = new Rule(Material.STONE, Material.OBSIDIAN, false, area, 0, 0);
+        entry = new RuleTable(Collections.singletonList(rule), world).get(Material.STONE.getId(), 0)[0];
+        Random random = new Random(1);
+        blocks = new int[BLOCKS * 3];
+        for(int i = 0; i < BLOCKS * 3; i += 3) {
+            int x = random.nextInt(areas) * 64;
+            if(random.nextInt(100) < hits) {
+                blocks[i] = x + random.nextInt(15) - 7;
+                blocks[i + 2] = random.nextInt(15) - 7;
+            } else {
+                blocks[i] = x + 32;
+                blocks[i + 2] = random.nextInt(64) - 32;
+            }
+            blocks[i + 1] = 64;
+        }
+    }
+    
+    /**
+     * Checks one block against the Rule
+     * @return true if the Rule applies
+     */
+    @Benchmark
+    public boolean ruleAppliesTo() {
+        int i = (next++ & (BLOCKS - 1)) * 3;
+        return rule.appliesTo(world, blocks[i], blocks[i + 1], blocks[i + 2]);
+    }
+    
+    /**
+     * Checks one block against the compiled Rule
+     * @return true if the Rule applies
+     */
+    @Benchmark
+    public boolean entryAppliesTo() {
+        int i = (next++ & (BLOCKS - 1)) * 3;
+        return entry.appliesTo(blocks[i], blocks[i + 1], blocks[i + 2]);
+    }
+    
+    /**
+     * Checks one block against one Area
+     * @return true if the Area contains the block
+     */
+    @Benchmark
+    public boolean areaContains() {
+        int n = next++, i = (n & (BLOCKS - 1)) * 3;
+        return area[n % areas].contains(world, blocks[i], blocks[i + 1], blocks[i + 2]);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It benchmarks onBlockFromTo() - lava flowing into blocks of a World with stub Blocks, see Stubs.
+ * rules is the number of Rules (each for other input), areas the number of Areas of each Rule (the first one
+ * covers all flooded blocks, others are elsewhere) and hits the percentage of flows into an input block
+ * (others flow into air). Run "ant bench", it reports throughput and, with -prof gc, allocation rate.
+ * @author LookyR
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowBenchmark {
+    
+    /**
+     * Number of events, power of 2
+     */
+    private static final int EVENTS = 1024;
+    
+    /**
+     * Number of Rules
+     */
+    @Param({"1", "64", "1024"})
+    public int rules;
+    
+    /**
+     * Number of Areas of each Rule
+     */
+    @Param({"0", "4"})
+    public int areas;
+    
+    /**
+     * Percentage of flows into an input block
+     */
+    @Param({"0", "50", "100"})
+    public int hits;
+    
+    /**
+     * Plugin with the Rules
+     */
+    private LavaWater plugin;
+    
+    /**
+     * Events, reused
+     */
+    private BlockFromToEvent[] events;
+    
+    /**
+     * Index of the next event
+     */
+    private int next;
+    
+    /**
+     * Creates Rules, the plugin and events
+     */
+    @Setup
+    public void setup() {
+        UUID id = UUID.randomUUID();
+        World world = Stubs.world(id);
+        List<Material> inputs = GetByName.materials("*").materials();
+        ArrayList<Rule> list = new ArrayList(rules);
+        for(int i = 0; i < rules; i++) {
+            Area[] area = new Area[areas];
+            for(int j = 0; j < areas; j++)
+                area[j] = j == 0 ? new Area(id, -128, -128, 127, 127, false) : new Area(id, 1024 * j, 0, 1024 * j + 64, 64, false);
+            list.add(new Rule(inputs.get(i % inputs.size()), Material.OBSIDIAN, i % 2 == 0, area, 0, 0));
+        }
+        plugin = Stubs.plugin(new RuleSet(list, new HashSet<UUID>(), Collections.singleton(id)));
+        Block lava = Stubs.block(world, Material.STATIONARY_LAVA, 0, 0, 64, 0);
+        Random random = new Random(1);
+        events = new BlockFromToEvent[EVENTS];
+        for(int i = 0; i < EVENTS; i++) {
+            Material type = random.nextInt(100) < hits ? inputs.get(random.nextInt(Math.min(rules, inputs.size()))) : Material.AIR;
+            Block to = Stubs.block(world, type, 0, random.nextInt(256) - 128, 64, random.nextInt(256) - 128);
+            events[i] = new BlockFromToEvent(lava, to);
+        }
+    }
+    
+    /**
+     * Handles one event
+     * @return true if a block was generated
+     */
+    @Benchmark
+    public boolean onBlockFromTo() {
+        BlockFromToEvent e = events[next++ & (EVENTS - 1)];
+        e.setCancelled(false);
+        plugin.onBlockFromTo(e);
+        return e.isCancelled();
+    }
+    
+    /**
+     * Makes the calls onBlockFromTo() makes on stubs when it generates a block, subtract it from onBlockFromTo
+     * @return Anything, so the calls are not eliminated
+     */
+    @Benchmark
+    public int stubs() {
+        BlockFromToEvent e = events[next++ & (EVENTS - 1)];
+        e.setCancelled(false);
+        Block to = e.getToBlock();
+        World world = to.getWorld();
+        int result = world.getUID().hashCode() + e.getBlock().getType().ordinal() + to.getTypeId() + to.getData();
+        result += to.getX() + to.getY() + to.getZ();
+        if(world.isChunkLoaded(to.getX() >> 4, to.getZ() >> 4))
+            result += world.getBlockTypeIdAt(to.getX() + 1, to.getY(), to.getZ());
+        to.setTypeIdAndData(Material.OBSIDIAN.getId(), (byte)0, true);
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It benchmarks GetByName.material() and GetByName.materials() - lookups made by commands and config loading.
+ * name is a Material name, lowercase name, id, group and a missing name (which throws an exception).
+ * @author LookyR
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetByNameBenchmark {
+    
+    /**
+     * Looked up name
+     */
+    @Param({"COBBLESTONE", "cobblestone", "4", "*", "missing"})
+    public String name;
+    
+    /**
+     * Looks up one Material
+     * @return Material or null if there is none
+     */
+    @Benchmark
+    public Material material() {
+        try {
+            return GetByName.material(name);
+        } catch(IllegalArgumentException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Looks up a group or one Material
+     * @return Group or null if there is none
+     */
+    @Benchmark
+    public MaterialSet materials() {
+        try {
+            return GetByName.materials(name);
+        } catch(IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It creates World and Block stubs for benchmarks, so the event handler can run without a server.
+ * Stubs are dynamic proxies: a call allocates its argument array and boxes primitive results outside
+ * of the Integer cache, keep coordinates within -128..127 and compare with FlowBenchmark.stubs.
+ * Worlds have all chunks loaded and stationary water everywhere, Blocks ignore changes of their type.
+ * @author LookyR
+ */
+public final class Stubs {
+    
+    /**
+     * Static class
+     */
+    private Stubs() {}
+    
+    /**
+     * Creates a World stub
+     * @param id UUID of the World
+     * @return World with all chunks loaded, getBlockTypeIdAt() returns stationary water
+     */
+    public static World world(final UUID id) {
+        return (World)Proxy.newProxyInstance(World.class.getClassLoader(), new Class[] {World.class}, new InvocationHandler() {
+    
+            /**
+             * Answers calls made by LavaWater
+             */ @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch(method.getName()) {
+                    case "getUID":
+                        return id;
+                    case "getName":
+                        return "bench";
+                    case "isChunkLoaded":
+                        return Boolean.TRUE;
+                    case "getBlockTypeIdAt":
+                        return Material.STATIONARY_WATER.getId();
+                    default:
+                        return standard(proxy, method, args);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Creates a Block stub
+     * @param world World of the Block
+     * @param type Type, doesn't change when the Block is set
+     * @param data Data value
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param z Z coordinate
+     * @return Block returning given values
+     */
+    public static Block block(final World world, final Material type, final int data, final int x, final int y, final int z) {
+        return (Block)Proxy.newProxyInstance(Block.class.getClassLoader(), new Class[] {Block.class}, new InvocationHandler() {
+    
+            /**
+             * Answers calls made by LavaWater
+             */ @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch(method.getName()) {
+                    case "getWorld":
+                        return world;
+                    case "getType":
+                        return type;
+                    case "getTypeId":
+                        return type.getId();
+                    case "getData":
+                        return (byte)data;
+                    case "getX":
+                        return x;
+                    case "getY":
+                        return y;
+                    case "getZ":
+                        return z;
+                    case "setType":
+                        return null;
+                    case "setTypeId":
+                    case "setTypeIdAndData":
+                        return Boolean.TRUE;
+                    default:
+                        return standard(proxy, method, args);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Creates the plugin with given Rules, without a server
+     * @param rules Snapshot of Rules, compiled for the World of the benchmark
+     * @return Plugin, onBlockFromTo() can be called
+     * @throws IllegalStateException When the snapshot can't be set
+     */
+    public static LavaWater plugin(RuleSet rules) {
+        LavaWater plugin = new LavaWater();
+        try {
+            Field field = LavaWater.class.getDeclaredField("ruleSet");
+            field.setAccessible(true);
+            field.set(plugin, rules);
+        } catch(NoSuchFieldException | IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return plugin;
+    }
+    
+    /**
+     * Answers methods of Object, used by stubs
+     * @param proxy Stub
+     * @param method Called method
+     * @param args Arguments
+     * @return Result of the method
+     * @throws UnsupportedOperationException When other method is called
+     */
+    private static Object standard(Object proxy, Method method, Object[] args) {
+        switch(method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Stub";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
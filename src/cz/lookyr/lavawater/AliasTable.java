@@ -0,0 +1,159 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.Material;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents names and numeric ids of Materials, built once and then only read.
+ * Names are kept in an open addressing hash table, ids in an array indexed by id.
+ * Lookups ignore case and surrounding whitespace and don't allocate.
+ * @author LookyR
+ */
+public final class AliasTable {
+    
+    /**
+     * Highest numeric id + 1
+     */
+    public static final int MAX_ID = 4096;
+    
+    /**
+     * Use get(), lowercase names, null means empty slot
+     */
+    private final String[] names;
+    
+    /**
+     * Use get(), Materials for names
+     */
+    private final Material[] materials;
+    
+    /**
+     * Use get(), Materials by numeric id
+     */
+    private final Material[] ids;
+    
+    /**
+     * All names and ids, sorted
+     */
+    private final List<String> list;
+    
+    /**
+     * Creates new table
+     * @param aliases Names or numeric ids
+     * @param targets Materials for aliases, at same positions
+     * @throws IllegalArgumentException When an id is out of range or lists differ in size
+     * @throws NullPointerException When any alias or Material is null
+     */
+    public AliasTable(List<String> aliases, List<Material> targets) {
+        if(aliases.size() != targets.size())
+            throw new IllegalArgumentException("Sizes differ");
+        int capacity = 16;
+        while(capacity < aliases.size() * 2)
+            capacity <<= 1;
+        names = new String[capacity];
+        materials = new Material[capacity];
+        ids = new Material[MAX_ID];
+        ArrayList<String> all = new ArrayList(aliases.size());
+        for(int i = 0; i < aliases.size(); i++) {
+            String alias = aliases.get(i).trim().toLowerCase();
+            Material material = targets.get(i);
+            if(material == null)
+                throw new NullPointerException();
+            int id = parseId(alias, 0, alias.length());
+            if(id >= MAX_ID)
+                throw new IllegalArgumentException("Id out of range: " + alias);
+            if(id >= 0) {
+                if(ids[id] == null)
+                    all.add(alias);
+                ids[id] = material;
+                continue;
+            }
+            int mask = capacity - 1, slot = hash(alias, 0, alias.length()) & mask;
+            while(names[slot] != null && !names[slot].equals(alias))
+                slot = (slot + 1) & mask;
+            if(names[slot] == null)
+                all.add(alias);
+            names[slot] = alias;
+            materials[slot] = material;
+        }
+        Collections.sort(all);
+        list = Collections.unmodifiableList(all);
+    }
+    
+    /**
+     * Returns Material with given name or id
+     * @param name Name or numeric id, case and surrounding whitespace are ignored
+     * @return Material or null if there is no such alias
+     * @throws NullPointerException If name is null
+     */
+    public final Material get(String name) {
+        int start = 0, end = name.length();
+        while(start < end && name.charAt(start) <= ' ')
+            start++;
+        while(end > start && name.charAt(end - 1) <= ' ')
+            end--;
+        int id = parseId(name, start, end);
+        if(id >= 0)
+            return id < MAX_ID ? ids[id] : null;
+        int mask = names.length - 1, length = end - start;
+        for(int slot = hash(name, start, end) & mask; names[slot] != null; slot = (slot + 1) & mask)
+            if(names[slot].length() == length && names[slot].regionMatches(true, 0, name, start, length))
+                return materials[slot];
+        return null;
+    }
+    
+    /**
+     * Returns all names and numeric ids
+     * @return Sorted unmodifiable list of lowercase aliases
+     */
+    public final List<String> names() {
+        return list;
+    }
+    
+    /**
+     * Used in constructor and get()
+     * @param s
+     * @param start
+     * @param end
+     * @return Case insensitive hash of the part of s
+     */
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for(int i = start; i < end; i++)
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Used in constructor and get()
+     * @param s
+     * @param start
+     * @param end
+     * @return Number in the part of s, Integer.MAX_VALUE when too large, -1 if it is not a number
+     */
+    private static int parseId(String s, int start, int end) {
+        if(start == end)
+            return -1;
+        int id = 0;
+        for(int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+            id = (id >= MAX_ID) ? MAX_ID : id * 10 + c - '0';
+        }
+        return id >= MAX_ID ? Integer.MAX_VALUE : id;
+    }
+}
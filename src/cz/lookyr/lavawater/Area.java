@@ -10,8 +10,12 @@
 
 package cz.lookyr.lavawater;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
 import org.bukkit.Location;
-import org.bukkit.World;
 
 /**
  * This class is part of LavaWater Bukkit plugin.
@@ -22,9 +26,9 @@ import org.bukkit.World;
 public final class Area {
     
     /**
-     * Use contains() or toString()
+     * Use contains() or toString(), UUID of the World or null for any world
      */
-    private final World w;
+    private final UUID w;
     
     /**
      * Use contains() or toString()
@@ -36,6 +40,21 @@ public final class Area {
      */
     private final byte type;
     
+    /**
+     * Use contains(), rasterized polygon or cylinder, null for other types
+     */
+    private final ShapeMask mask;
+    
+    /**
+     * Use contains(), region of a region provider, null for other types
+     */
+    private final Regions.Region region;
+    
+    /**
+     * Use toString(), vertices of polygon (x, z, x, z, ...) or center and radius of cylinder, null for other types
+     */
+    private final int[] shape;
+    
     /**
      * false means inside, true means outside
      */
@@ -44,7 +63,7 @@ public final class Area {
     /**
      * Creates new Area object with all coordinates set to given values.
      * Eventually swaps respective coordinates so first is always smaller (x1≤x2, 0≤y1≤y2≤256, z1≤z2).
-     * @param w World
+     * @param w UUID of the World or null for any world
      * @param x1 First X (longitude) coordinate - east (positive) or west (negative)
      * @param y1 First Y (altitude) coordinate - up (positive) or down (negative)
      * @param z1 First Z (latitude) coordinate - south (positive) or north (negative)
@@ -53,7 +72,7 @@ public final class Area {
      * @param z2 Second Z (latitude) coordinate - south (positive) or north (negative)
      * @param invert false means inside, true means outside
      */
-    public Area(World w, int x1, int y1, int z1, int x2, int y2, int z2, boolean invert) {
+    public Area(UUID w, int x1, int y1, int z1, int x2, int y2, int z2, boolean invert) {
         this.w = w;
         this.x1 = Math.min(x1, x2);
         this.y1 = Math.min(0, Math.min(y1, y2));
@@ -63,20 +82,23 @@ public final class Area {
         this.z2 = Math.max(z1, z2);
         this.invert = invert;
         type = 0;
+        mask = null;
+        shape = null;
+        region = null;
     }
     
     /**
      * Creates new Area object with X (longitude) and Z (latitude) coordinates set.
      * Eventually swaps respective coordinates so first is always smaller (x1≤x2, z1≤z2).
      * Y (altitude) coordinates are set to 0 and 256.
-     * @param w World
+     * @param w UUID of the World or null for any world
      * @param x1 First X (longitude) coordinate - east (positive) or west (negative)
      * @param z1 First Z (latitude) coordinate - south (positive) or north (negative)
      * @param x2 Second X (longitude) coordinate - east (positive) or west (negative)
      * @param z2 Second Z (latitude) coordinate - south (positive) or north (negative)
      * @param invert false means inside, true means outside
      */
-    public Area(World w, int x1, int z1, int x2, int z2, boolean invert) {
+    public Area(UUID w, int x1, int z1, int x2, int z2, boolean invert) {
         this.w = w;
         this.x1 = Math.min(x1, x2);
         this.y1 = 0;
@@ -86,6 +108,9 @@ public final class Area {
         this.z2 = Math.max(z1, z2);
         this.invert = invert;
         type = 1;
+        mask = null;
+        shape = null;
+        region = null;
     }
     
     /**
@@ -93,10 +118,10 @@ public final class Area {
      * X (longitude) coordinates are set to Integer.MIN_VALUE and Integer.MAX_VALUE.
      * Y (altitude) coordinates are set to 0 and 256.
      * Z (latitude) coordinates are set to Integer.MIN_VALUE and Integer.MAX_VALUE.
-     * @param w World
+     * @param w UUID of the World or null for any world
      * @param invert false means inside, true means outside
      */
-    public Area(World w, boolean invert) {
+    public Area(UUID w, boolean invert) {
         this.w = w;
         this.x1 = Integer.MIN_VALUE;
         this.y1 = 0;
@@ -106,6 +131,173 @@ public final class Area {
         this.z2 = Integer.MAX_VALUE;
         this.invert = invert;
         type = 2;
+        mask = null;
+        shape = null;
+        region = null;
+    }
+    
+    /**
+     * Creates new polygon Area object, Y (altitude) coordinates are set to 0 and 256.
+     * Blocks inside the polygon or on its edges are within the Area.
+     * @param w UUID of the World or null for any world
+     * @param x X (longitude) coordinates of vertices, in order
+     * @param z Z (latitude) coordinates of vertices, in order
+     * @param invert false means inside, true means outside
+     * @throws IllegalArgumentException When there are less than 3 vertices or the polygon is larger than ShapeMask.MAX_SIZE
+     */
+    public Area(UUID w, int[] x, int[] z, boolean invert) {
+        mask = ShapeMask.polygon(x, z);
+        this.w = w;
+        int minX = x[0], maxX = x[0], minZ = z[0], maxZ = z[0];
+        shape = new int[x.length * 2];
+        for(int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
+            shape[i * 2] = x[i];
+            shape[i * 2 + 1] = z[i];
+        }
+        this.x1 = minX;
+        this.y1 = 0;
+        this.z1 = minZ;
+        this.x2 = maxX;
+        this.y2 = 256;
+        this.z2 = maxZ;
+        this.invert = invert;
+        type = 3;
+        region = null;
+    }
+    
+    /**
+     * Creates new cylinder Area object, Y (altitude) coordinates are set to 0 and 256.
+     * Blocks not farther than radius from the center are within the Area.
+     * @param w UUID of the World or null for any world
+     * @param x X (longitude) coordinate of the center
+     * @param z Z (latitude) coordinate of the center
+     * @param radius Radius in blocks
+     * @param invert false means inside, true means outside
+     * @throws IllegalArgumentException When radius is negative or the cylinder is larger than ShapeMask.MAX_SIZE
+     */
+    public Area(UUID w, int x, int z, int radius, boolean invert) {
+        mask = ShapeMask.cylinder(x, z, radius);
+        this.w = w;
+        this.x1 = x - radius;
+        this.y1 = 0;
+        this.z1 = z - radius;
+        this.x2 = x + radius;
+        this.y2 = 256;
+        this.z2 = z + radius;
+        this.invert = invert;
+        type = 4;
+        shape = new int[] {x, z, radius};
+        region = null;
+    }
+    
+    /**
+     * Creates new Area object backed by a region of a region provider (e.g. WorldGuard).
+     * Coordinates are set same as in Area(UUID, boolean), the region decides.
+     * @param w UUID of the World or null for any world
+     * @param region Region, see Regions.get()
+     * @param invert false means inside, true means outside
+     * @throws NullPointerException When region is null
+     */
+    public Area(UUID w, Regions.Region region, boolean invert) {
+        if(region == null)
+            throw new NullPointerException();
+        this.w = w;
+        this.x1 = Integer.MIN_VALUE;
+        this.y1 = 0;
+        this.z1 = Integer.MIN_VALUE;
+        this.x2 = Integer.MAX_VALUE;
+        this.y2 = 256;
+        this.z2 = Integer.MAX_VALUE;
+        this.invert = invert;
+        type = 5;
+        mask = null;
+        shape = null;
+        this.region = region;
+    }
+    
+    /**
+     * Parses an Area declaration, e.g. "world, 0, 0, 100, 100" or "!world, region, local, spawn"
+     * @param area Declaration, '!' or '^' in front inverts it
+     * @return New Area
+     * @throws IllegalArgumentException When the declaration is invalid or the World doesn't exist
+     */
+    public static Area parse(String area) {
+        boolean inv = false;
+        int i;
+        for(i = 0; i < area.length(); i++)
+            if(area.charAt(i) == '!' || area.charAt(i) == '^')
+                inv = !inv;
+            else
+                break;
+        String[] split = area.substring(i).split("\\s*,\\s*");
+        try {
+            if(split.length > 1 && split[1].equalsIgnoreCase("region")) {
+                if(split.length != 4)
+                    throw new IllegalArgumentException("Invalid area declaration: " + area);
+                return new Area(
+                        GetByName.worldId(split[0]),
+                        Regions.get(split[2], split[3]),
+                        inv
+                );
+            }
+            if(split.length > 1 && split[1].equalsIgnoreCase("cylinder")) {
+                if(split.length != 5)
+                    throw new IllegalArgumentException("Invalid area declaration: " + area);
+                return new Area(
+                        GetByName.worldId(split[0]),
+                        Integer.parseInt(split[2]),
+                        Integer.parseInt(split[3]),
+                        Integer.parseInt(split[4]),
+                        inv
+                );
+            }
+            if(split.length > 1 && split[1].equalsIgnoreCase("polygon")) {
+                if(split.length < 8 || split.length % 2 != 0)
+                    throw new IllegalArgumentException("Invalid area declaration: " + area);
+                int[] x = new int[(split.length - 2) / 2], z = new int[x.length];
+                for(int j = 0; j < x.length; j++) {
+                    x[j] = Integer.parseInt(split[2 + j * 2]);
+                    z[j] = Integer.parseInt(split[3 + j * 2]);
+                }
+                return new Area(GetByName.worldId(split[0]), x, z, inv);
+            }
+            switch(split.length) {
+                case 1:
+                    return new Area(
+                            GetByName.worldId(split[0]),
+                            inv
+                    );
+                case 5:
+                    return new Area(
+                            GetByName.worldId(split[0]),
+                            Integer.parseInt(split[1]),
+                            Integer.parseInt(split[2]),
+                            Integer.parseInt(split[3]),
+                            Integer.parseInt(split[4]),
+                            inv
+                    );
+                case 7:
+                    return new Area(
+                            GetByName.worldId(split[0]),
+                            Integer.parseInt(split[1]),
+                            Integer.parseInt(split[2]),
+                            Integer.parseInt(split[3]),
+                            Integer.parseInt(split[4]),
+                            Integer.parseInt(split[5]),
+                            Integer.parseInt(split[6]),
+                            inv
+                    );
+                default:
+                    throw new IllegalArgumentException("Invalid area declaration: " + area);
+            }
+        } catch(NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid area declaration: " + area, ex);
+        }
+    
     }
     
     /**
@@ -114,8 +306,195 @@ public final class Area {
      * @return true if a block is within the area, false if outside
      */
     public final boolean contains(Location block) {
-        int x = block.getBlockX(), y = block.getBlockY(), z = block.getBlockZ();
-        return (w == null || w.equals(block.getWorld())) && x1 <= x && x <= x2 && y1 <= y && y <= y2 && z1 <= z && z <= z2;
+        return contains(block.getWorld().getUID(), block.getBlockX(), block.getBlockY(), block.getBlockZ());
+    }
+    
+    /**
+     * Checks if a block is within an instance of Area
+     * @param world UUID of the World of the block
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if a block is within the area, false if outside
+     */
+    public final boolean contains(UUID world, int x, int y, int z) {
+        return (w == null || w.equals(world)) && contains(x, y, z) && (region == null || region.contains(world, x, y, z));
+    }
+    
+    /**
+     * Checks if a block is within coordinates of an instance of Area, ignoring the World and region
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if a block is within the coordinates, false if outside
+     */
+    public final boolean contains(int x, int y, int z) {
+        return x1 <= x && x <= x2 && y1 <= y && y <= y2 && z1 <= z && z <= z2 && (mask == null || mask.contains(x, z));
+    }
+    
+    /**
+     * Returns World of this Area
+     * @return UUID of the World or null for any world
+     */
+    final UUID getWorld() {
+        return w;
+    }
+    
+    /**
+     * Returns region of this Area
+     * @return Region or null if this Area is not backed by a region
+     */
+    final Regions.Region getRegion() {
+        return region;
+    }
+    
+    /**
+     * Checks whether this Area may contain a block of a box, used by LocalRegions
+     * @param x1 Smallest X of the box
+     * @param y1 Smallest Y of the box
+     * @param z1 Smallest Z of the box
+     * @param x2 Largest X of the box
+     * @param y2 Largest Y of the box
+     * @param z2 Largest Z of the box
+     * @return false if no block of the box is within bounds of this Area
+     */
+    final boolean intersects(int x1, int y1, int z1, int x2, int y2, int z2) {
+        return this.x1 <= x2 && x1 <= this.x2 && this.y1 <= y2 && y1 <= this.y2 && this.z1 <= z2 && z1 <= this.z2;
+    }
+    
+    /**
+     * Checks whether this Area contains all blocks of a box, used by LocalRegions
+     * @param x1 Smallest X of the box
+     * @param y1 Smallest Y of the box
+     * @param z1 Smallest Z of the box
+     * @param x2 Largest X of the box
+     * @param y2 Largest Y of the box
+     * @param z2 Largest Z of the box
+     * @return true if all blocks are within this Area, false if some are not or it is not sure
+     */
+    final boolean covers(int x1, int y1, int z1, int x2, int y2, int z2) {
+        return mask == null && region == null &&
+                this.x1 <= x1 && x2 <= this.x2 && this.y1 <= y1 && y2 <= this.y2 && this.z1 <= z1 && z2 <= this.z2;
+    }
+    
+    /**
+     * Returns number of chunks covered by this Area, used by AreaIndex
+     * @return Number of chunk columns, may exceed Integer.MAX_VALUE
+     */
+    final long chunkCount() {
+        return ((long)(x2 >> 4) - (x1 >> 4) + 1) * ((long)(z2 >> 4) - (z1 >> 4) + 1);
+    }
+    
+    /**
+     * Returns smallest X chunk coordinate of this Area
+     * @return Chunk X
+     */
+    final int minChunkX() {
+        return x1 >> 4;
+    }
+    
+    /**
+     * Returns smallest Z chunk coordinate of this Area
+     * @return Chunk Z
+     */
+    final int minChunkZ() {
+        return z1 >> 4;
+    }
+    
+    /**
+     * Returns largest X chunk coordinate of this Area
+     * @return Chunk X
+     */
+    final int maxChunkX() {
+        return x2 >> 4;
+    }
+    
+    /**
+     * Returns largest Z chunk coordinate of this Area
+     * @return Chunk Z
+     */
+    final int maxChunkZ() {
+        return z2 >> 4;
+    }
+    
+    /**
+     * Writes resolved form of this Area to a snapshot, used by SnapshotFile
+     * @param out Stream of the snapshot
+     * @throws IOException When writing fails
+     */
+    final void write(DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeByte(invert ? 1 : 0);
+        out.writeByte(w == null ? 0 : 1);
+        if(w != null) {
+            out.writeLong(w.getMostSignificantBits());
+            out.writeLong(w.getLeastSignificantBits());
+        }
+        switch(type) {
+            case 0:
+                out.writeInt(x1);
+                out.writeInt(y1);
+                out.writeInt(z1);
+                out.writeInt(x2);
+                out.writeInt(y2);
+                out.writeInt(z2);
+                break;
+            case 1:
+                out.writeInt(x1);
+                out.writeInt(z1);
+                out.writeInt(x2);
+                out.writeInt(z2);
+                break;
+            case 3:
+            case 4:
+                out.writeInt(shape.length);
+                for(int i : shape)
+                    out.writeInt(i);
+                break;
+            case 5:
+                SnapshotFile.putString(out, region.provider);
+                SnapshotFile.putString(out, region.id);
+        }
+    }
+    
+    /**
+     * Reads an Area written by write(), used by SnapshotFile
+     * @param buffer Content of the snapshot at position of the Area
+     * @return New Area
+     * @throws IllegalArgumentException When the Area is damaged
+     * @throws java.nio.BufferUnderflowException When the snapshot ends
+     */
+    static Area read(ByteBuffer buffer) {
+        byte t = buffer.get();
+        boolean inv = buffer.get() != 0;
+        UUID world = buffer.get() == 0 ? null : new UUID(buffer.getLong(), buffer.getLong());
+        switch(t) {
+            case 0:
+                return new Area(world, buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt(), buffer.getInt(), buffer.getInt(), inv);
+            case 1:
+                return new Area(world, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), inv);
+            case 2:
+                return new Area(world, inv);
+            case 3:
+                int length = buffer.getInt();
+                if(length < 6 || length % 2 != 0 || length > buffer.remaining() / 4)
+                    throw new IllegalArgumentException("Invalid polygon: " + length);
+                int[] x = new int[length / 2], z = new int[x.length];
+                for(int i = 0; i < x.length; i++) {
+                    x[i] = buffer.getInt();
+                    z[i] = buffer.getInt();
+                }
+                return new Area(world, x, z, inv);
+            case 4:
+                if(buffer.getInt() != 3)
+                    throw new IllegalArgumentException("Invalid cylinder");
+                return new Area(world, buffer.getInt(), buffer.getInt(), buffer.getInt(), inv);
+            case 5:
+                return new Area(world, Regions.get(SnapshotFile.getString(buffer), SnapshotFile.getString(buffer)), inv);
+            default:
+                throw new IllegalArgumentException("Invalid area type: " + t);
+        }
     }
     
     /**
@@ -125,13 +504,22 @@ public final class Area {
     public final String toString() {
         switch(type) {
             case 0:
-                return (invert ? "!" + w.getUID() : w.getUID()) +
+                return (invert ? "!" + w : String.valueOf(w)) +
                         ", " + x1 + ", " + y1 + ", " + z1 + ", " + x2 + ", " + y2 + ", " + z2;
             case 1:
-                return (invert ? "!" + w.getUID() : w.getUID()) +
+                return (invert ? "!" + w : String.valueOf(w)) +
                         ", " + x1 + ", " + z1 + ", " + x2 + ", " + z2;
             case 2:
-                return (invert ? "!" + w.getUID() : w.getUID().toString());
+                return (invert ? "!" + w : String.valueOf(w));
+            case 3:
+            case 4:
+                StringBuilder builder = new StringBuilder(invert ? "!" + w : String.valueOf(w));
+                builder.append(type == 3 ? ", polygon" : ", cylinder");
+                for(int i : shape)
+                    builder.append(", ").append(i);
+                return builder.toString();
+            case 5:
+                return (invert ? "!" + w : String.valueOf(w)) + ", region, " + region;
             default:
                 throw new AssertionError();
         }
@@ -0,0 +1,147 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents Areas of one Rule in one World, bucketed by chunk.
+ * Areas of other worlds are dropped when the index is built.
+ * Areas covering more than MAX_CHUNKS chunks are kept in a separate list instead of being copied into every bucket.
+ * The last Area (in order of the Rule) containing a block decides, same as a linear scan would.
+ * @author LookyR
+ */
+public final class AreaIndex {
+    
+    /**
+     * Areas covering more chunks are not bucketed
+     */
+    public static final int MAX_CHUNKS = 1024;
+    
+    /**
+     * Areas of the Rule in this World, in original order
+     */
+    private final Area[] areas;
+    
+    /**
+     * Positions (ascending) of Areas in each chunk
+     */
+    private final LongMap<int[]> buckets;
+    
+    /**
+     * Positions (ascending) of large Areas
+     */
+    private final int[] large;
+    
+    /**
+     * Result when no Area contains the block
+     */
+    private final boolean fallback;
+    
+    /**
+     * UUID of the World, passed to region Areas
+     */
+    private final UUID world;
+    
+    /**
+     * Creates index of Areas for one World
+     * @param all All Areas of the Rule, not empty
+     * @param world UUID of the World to index
+     */
+    public AreaIndex(Area[] all, UUID world) {
+        fallback = all[0].invert;
+        this.world = world;
+        ArrayList<Area> list = new ArrayList(all.length);
+        for(Area area : all)
+            if(area.getWorld() == null || area.getWorld().equals(world))
+                list.add(area);
+        areas = list.toArray(new Area[list.size()]);
+        ArrayList<Integer> bigOnes = new ArrayList();
+        ArrayList<Long> keys = new ArrayList();
+        LongMap<ArrayList<Integer>> lists = new LongMap(16);
+        for(int i = 0; i < areas.length; i++) {
+            Area area = areas[i];
+            if(area.chunkCount() > MAX_CHUNKS) {
+                bigOnes.add(i);
+                continue;
+            }
+            for(int x = area.minChunkX(); x <= area.maxChunkX(); x++)
+                for(int z = area.minChunkZ(); z <= area.maxChunkZ(); z++) {
+                    long key = LongMap.chunkKey(x, z);
+                    ArrayList<Integer> bucket = lists.get(key);
+                    if(bucket == null) {
+                        lists.put(key, bucket = new ArrayList(2));
+                        keys.add(key);
+                    }
+                    bucket.add(i);
+                }
+        }
+        large = toArray(bigOnes);
+        buckets = new LongMap(keys.size());
+        for(long key : keys)
+            buckets.put(key, toArray(lists.get(key)));
+    }
+    
+    /**
+     * Checks, whether no Area of the Rule is in this World
+     * @return true if appliesTo() always returns getFallback()
+     */
+    public final boolean isEmpty() {
+        return areas.length == 0;
+    }
+    
+    /**
+     * Returns result of appliesTo() for blocks outside of all Areas
+     * @return true if the first Area of the Rule is inverted
+     */
+    public final boolean getFallback() {
+        return fallback;
+    }
+    
+    /**
+     * Checks, whether the Rule applies to a block in the World of this index
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if the last Area containing the block is not inverted,
+     *         or the first Area is inverted and no Area contains the block
+     */
+    public final boolean appliesTo(int x, int y, int z) {
+        int best = -1;
+        int[] bucket = buckets.get(LongMap.chunkKey(x >> 4, z >> 4));
+        if(bucket != null)
+            for(int i = bucket.length - 1; i >= 0; i--)
+                if(areas[bucket[i]].contains(world, x, y, z)) {
+                    best = bucket[i];
+                    break;
+                }
+        for(int i = large.length - 1; i >= 0 && large[i] > best; i--)
+            if(areas[large[i]].contains(world, x, y, z)) {
+                best = large[i];
+                break;
+            }
+        return best < 0 ? fallback : !areas[best].invert;
+    }
+    
+    /**
+     * Used in constructor
+     * @param list
+     * @return Array of ints
+     */
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It records generated blocks into an append-only binary log, to look for duplication exploits afterwards.
+ * Server threads write fixed-size records into a preallocated ring buffer without locking or allocating:
+ * a slot is claimed by compare-and-set of the head and marked as written by an ordered store of its sequence number.
+ * When the buffer is full, records are dropped and counted instead of waiting. A background thread drains the buffer
+ * every second into gzip files in the audit folder, starting a new file every hour (or 64 MiB), and deletes old files.
+ * A record is 6 longs: time in ms, World UUID (2 longs), x &lt;&lt; 32 | z, y &lt;&lt; 32 | Rule.slotHash,
+ * input (type id &lt;&lt; 4 | data) &lt;&lt; 16 | output (type id &lt;&lt; 4 | data).
+ * @author LookyR
+ */
+public final class AuditLog implements Runnable {
+    
+    /**
+     * Number of records in the ring buffer, power of 2
+     */
+    public static final int CAPACITY = 1 << 16;
+    
+    /**
+     * Number of longs in one record
+     */
+    private static final int LONGS = 6;
+    
+    /**
+     * Size of one record in a file, in bytes
+     */
+    public static final int RECORD = LONGS * 8;
+    
+    /**
+     * Age of a file when a new one is started, in ms
+     */
+    private static final long ROTATE_TIME = 3600000L;
+    
+    /**
+     * Uncompressed size of a file when a new one is started, in bytes
+     */
+    private static final long ROTATE_SIZE = 64L << 20;
+    
+    /**
+     * Records by slot, LONGS longs each
+     */
+    private final long[] records = new long[CAPACITY * LONGS];
+    
+    /**
+     * Sequence number + 1 of the record last written into each slot
+     */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    
+    /**
+     * Sequence number of the next claimed slot
+     */
+    private final AtomicLong head = new AtomicLong();
+    
+    /**
+     * Sequence number of the next record to drain, written only by the writer thread
+     */
+    private volatile long tail;
+    
+    /**
+     * Number of records dropped because the buffer was full
+     */
+    public final Counter dropped = new Counter();
+    
+    /**
+     * Number of records written to files
+     */
+    public final Counter written = new Counter();
+    
+    /**
+     * Folder with log files
+     */
+    public final File folder;
+    
+    /**
+     * Hours after which files are deleted
+     */
+    public final int hours;
+    
+    /**
+     * Logger for warnings
+     */
+    private final Logger logger;
+    
+    /**
+     * Writer thread
+     */
+    private final Thread thread;
+    
+    /**
+     * false when stop() was called
+     */
+    private volatile boolean running = true;
+    
+    /**
+     * Current file, used only by the writer thread, null if none is open
+     */
+    private DataOutputStream out;
+    
+    /**
+     * Time when the current file was opened, in ms
+     */
+    private long opened;
+    
+    /**
+     * Uncompressed bytes written to the current file
+     */
+    private long size;
+    
+    /**
+     * Creates the log and starts its writer thread
+     * @param folder Folder for log files, usually audit in the plugin folder, created if needed
+     * @param hours Hours after which files are deleted, at least 1
+     * @param logger Logger for warnings
+     */
+    public AuditLog(File folder, int hours, Logger logger) {
+        this.folder = folder;
+        this.hours = Math.max(1, hours);
+        this.logger = logger;
+        thread = new Thread(this, "LavaWater audit writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    /**
+     * Records a generated block, never blocks; drops the record if the buffer is full
+     * @param world UUID of the World
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @param rule Rule.slotHash of the Rule, stable across restarts unlike its id
+     * @param input Replaced block, type id &lt;&lt; 4 | data value
+     * @param output Generated block, type id &lt;&lt; 4 | data value
+     */
+    public final void record(UUID world, int x, int y, int z, int rule, int input, int output) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if(sequence - tail >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while(!head.compareAndSet(sequence, sequence + 1));
+        int slot = (int)sequence & (CAPACITY - 1), i = slot * LONGS;
+        records[i] = System.currentTimeMillis();
+        records[i + 1] = world.getMostSignificantBits();
+        records[i + 2] = world.getLeastSignificantBits();
+        records[i + 3] = (long)x << 32 | z & 0xFFFFFFFFL;
+        records[i + 4] = (long)y << 32 | rule & 0xFFFFFFFFL;
+        records[i + 5] = (long)(input & 0xFFFF) << 16 | output & 0xFFFF;
+        published.lazySet(slot, sequence + 1);
+    }
+    
+    /**
+     * Returns number of records waiting in the buffer
+     * @return Claimed records not written yet
+     */
+    public final long pending() {
+        return head.get() - tail;
+    }
+    
+    /**
+     * Writer thread, drains the buffer every second until stop() is called
+     */ @Override
+    public final void run() {
+        while(running) {
+            drain();
+            try {
+                Thread.sleep(1000);
+            } catch(InterruptedException ex) {
+                // stop() was called
+            }
+        }
+        drain();
+        close();
+    }
+    
+    /**
+     * Stops the writer thread after it writes all records, call it when the plugin is disabled
+     */
+    public final void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Writes published records to the current file, used in run()
+     */
+    private void drain() {
+        long next = tail;
+        try {
+            while(published.get((int)next & (CAPACITY - 1)) == next + 1) {
+                int i = ((int)next & (CAPACITY - 1)) * LONGS;
+                if(out == null || records[i] - opened >= ROTATE_TIME || size >= ROTATE_SIZE)
+                    rotate(records[i]);
+                for(int j = 0; j < LONGS; j++)
+                    out.writeLong(records[i + j]);
+                size += RECORD;
+                written.increment();
+                if((++next & 1023) == 0)
+                    tail = next;
+            }
+            if(out != null)
+                out.flush();
+        } catch(IOException ex) {
+            close();
+            long skipped = 0;
+            for(; published.get((int)next & (CAPACITY - 1)) == next + 1; next++)
+                skipped++;
+            dropped.add(skipped);
+            logger.log(Level.WARNING, "Couldn''t write audit log, dropped {0} records: {1}", new Object[] {skipped, ex.getMessage()});
+        }
+        tail = next;
+    }
+    
+    /**
+     * Closes the current file and opens a new one, deletes expired files, used in drain()
+     * @param now Time of the first record of the new file, in ms
+     * @throws IOException When the new file can't be opened
+     */
+    private void rotate(long now) throws IOException {
+        close();
+        if(!folder.isDirectory() && !folder.mkdirs())
+            throw new IOException("Could not create " + folder);
+        for(File file : files(folder))
+            if(file.lastModified() < now - hours * 3600000L)
+                file.delete();
+        File file = new File(folder, "audit-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(now)) + ".gz");
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), 65536, true), 65536));
+        opened = now;
+        size = 0;
+    }
+    
+    /**
+     * Closes the current file, used by the writer thread
+     */
+    private void close() {
+        if(out == null)
+            return;
+        try {
+            out.close();
+        } catch(IOException ex) {
+            logger.log(Level.WARNING, "Couldn''t close audit log: {0}", ex.getMessage());
+        }
+        out = null;
+    }
+    
+    /**
+     * Lists log files
+     * @param folder Folder with log files
+     * @return Files in order of time (names contain time of their first record), empty if there are none
+     */
+    public static File[] files(File folder) {
+        ArrayList<File> list = new ArrayList();
+        File[] all = folder.listFiles();
+        if(all != null)
+            for(File file : all)
+                if(file.getName().startsWith("audit-") && file.getName().endsWith(".gz"))
+                    list.add(file);
+        File[] files = list.toArray(new File[list.size()]);
+        Arrays.sort(files);
+        return files;
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It represents one record read from a log file.
+     */
+    public static final class Entry {
+    
+        /**
+         * Time of generating, in ms
+         */
+        public final long time;
+    
+        /**
+         * UUID of the World
+         */
+        public final UUID world;
+    
+        /**
+         * Coordinates of the block
+         */
+        public final int x, y, z;
+    
+        /**
+         * Rule.slotHash of the Rule
+         */
+        public final int rule;
+    
+        /**
+         * Replaced block, type id &lt;&lt; 4 | data value
+         */
+        public final int input;
+    
+        /**
+         * Generated block, type id &lt;&lt; 4 | data value
+         */
+        public final int output;
+    
+        /**
+         * Used in Search
+         * @param record LONGS longs of a record
+         */
+        private Entry(long[] record) {
+            time = record[0];
+            world = new UUID(record[1], record[2]);
+            x = (int)(record[3] >> 32);
+            z = (int)record[3];
+            y = (int)(record[4] >> 32);
+            rule = (int)record[4];
+            input = (int)(record[5] >>> 16) & 0xFFFF;
+            output = (int)record[5] & 0xFFFF;
+        }
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It searches log files for blocks generated in a square area since some time.
+     * Files last modified before that time are skipped without reading. Use it off the main thread.
+     */
+    public static final class Search {
+    
+        /**
+         * Number of matching records
+         */
+        public int count = 0;
+    
+        /**
+         * Last matching records, oldest first
+         */
+        public final ArrayList<Entry> latest;
+    
+        /**
+         * Reads log files and collects matching records
+         * @param folder Folder with log files
+         * @param world UUID of the World
+         * @param x X coordinate of the center
+         * @param z Z coordinate of the center
+         * @param radius Maximum distance from the center on either axis
+         * @param since Minimum time, in ms
+         * @param limit Maximum number of records kept in latest
+         * @throws IOException When a file can't be read
+         */
+        public Search(File folder, UUID world, int x, int z, int radius, long since, int limit) throws IOException {
+            ArrayDeque<Entry> last = new ArrayDeque(limit + 1);
+            long most = world.getMostSignificantBits(), least = world.getLeastSignificantBits();
+            long[] record = new long[LONGS];
+            for(File file : files(folder)) {
+                if(file.lastModified() < since)
+                    continue;
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 65536), 65536))) {
+                    while(true) {
+                        for(int i = 0; i < LONGS; i++)
+                            record[i] = in.readLong();
+                        int rx = (int)(record[3] >> 32), rz = (int)record[3];
+                        if(record[0] < since || record[1] != most || record[2] != least
+                                || Math.abs(rx - x) > radius || Math.abs(rz - z) > radius)
+                            continue;
+                        count++;
+                        last.addLast(new Entry(record));
+                        if(last.size() > limit)
+                            last.removeFirst();
+                    }
+                } catch(EOFException ex) {
+                    // end of the file, or of the part the writer flushed so far
+                }
+            }
+            latest = new ArrayList(last);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents what to do when water is needed, none was found and a neighbor block is in an unloaded chunk.
+ * Unloaded chunks are never loaded just to check for water.
+ * @author LookyR
+ */
+public enum ChunkPolicy {
+    
+    /**
+     * Unloaded neighbor counts as water
+     */
+    WATER,
+    
+    /**
+     * Unloaded neighbor counts as no water
+     */
+    DRY,
+    
+    /**
+     * Rules needing water are not applied at all, lava flows as in vanilla
+     */
+    SKIP;
+    
+    /**
+     * Get policy with given name
+     * @param name Name of the policy, case insensitive
+     * @throws IllegalArgumentException If policy doesn't exist
+     * @throws NullPointerException If name is null
+     * @return ChunkPolicy enum instance
+     */
+    public static ChunkPolicy get(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch(IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid unloaded-chunks policy: " + name, ex);
+        }
+    }
+}
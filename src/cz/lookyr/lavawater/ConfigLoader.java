@@ -0,0 +1,215 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents content of config.yml, parsed into Rules and settings.
+ * It only reads names of Worlds from the server, so it can be created off the main thread.
+ * An input has either one Rule (a section) or more Rules (a list of sections):
+ * <pre>
+ * rules:
+ *   stone:
+ *     result: cobblestone
+ *   sand:
+ *     - result: gold_ore
+ *       priority: 10
+ *       area: ["world, region, local, mine"]
+ *     - result: sandstone
+ * </pre>
+ * Rules are evaluated by priority, then in order of the file. When grouping by input would change the order
+ * of Rules with the same priority (e.g. "*" between two "stone" Rules), rules is one list with the input in each Rule:
+ * <pre>
+ * rules:
+ *   - input: stone
+ *     result: cobblestone
+ *   - input: "*"
+ *     result: gravel
+ *   - input: stone
+ *     result: coal_ore
+ * </pre>
+ * @author LookyR
+ */
+public final class ConfigLoader {
+    
+    /**
+     * Rules in order of the file, invalid ones are skipped
+     */
+    public final ArrayList<Rule> rules = new ArrayList();
+    
+    /**
+     * UUIDs of Worlds where rules are applied, empty for all Worlds
+     */
+    public final HashSet<UUID> worlds = new HashSet();
+    
+    /**
+     * What to do when a neighbor block of the water check is in an unloaded chunk
+     */
+    public ChunkPolicy unloadedChunks = ChunkPolicy.DRY;
+    
+    /**
+     * Port of the Prometheus endpoint on 127.0.0.1, 0 for none
+     */
+    public int metricsPort = 0;
+    
+    /**
+     * Maximum number of blocks generated per minute in one chunk, 0 for unlimited
+     */
+    public int chunkQuota = 0;
+    
+    /**
+     * true to place generated blocks at once in the next tick, without physics
+     */
+    public boolean batchPlacement = false;
+    
+    /**
+     * Hours of audit log kept, 0 for no audit log
+     */
+    public int auditHours = 0;
+    
+    /**
+     * Aliases and groups the Rules were parsed with, published together with the Rules on reload
+     */
+    public final GetByName.Aliases aliases;
+    
+    /**
+     * Creates empty content with default settings and current aliases, filled by SnapshotFile or ConfigSaver
+     */
+    public ConfigLoader() {
+        aliases = GetByName.aliases();
+    }
+    
+    /**
+     * Parses configuration with current aliases, logs and skips invalid values
+     * @param config Configuration, usually content of config.yml
+     * @param logger Logger for warnings
+     */
+    public ConfigLoader(ConfigurationSection config, Logger logger) {
+        this(config, GetByName.aliases(), logger);
+    }
+    
+    /**
+     * Parses configuration, logs and skips invalid values
+     * @param config Configuration, usually content of config.yml
+     * @param aliases Aliases and groups used for names of blocks, see GetByName.readAliases()
+     * @param logger Logger for warnings
+     */
+    public ConfigLoader(ConfigurationSection config, GetByName.Aliases aliases, Logger logger) {
+        this.aliases = aliases;
+        for(String key : config.getKeys(true))
+            if(key.startsWith("rules.")) {
+                if(key.lastIndexOf(".") == 5)
+                    if(config.isList(key)) {
+                        MemoryConfiguration holder = new MemoryConfiguration();
+                        for(Map<?, ?> map : config.getMapList(key))
+                            addRule(key.substring(6), holder.createSection("rule", map), logger);
+                    } else if(config.isConfigurationSection(key))
+                        addRule(key.substring(6), config.getConfigurationSection(key), logger);
+            } else
+                switch(key) {
+                    case "rules":
+                        if(config.isList(key)) {
+                            MemoryConfiguration holder = new MemoryConfiguration();
+                            for(Map<?, ?> map : config.getMapList(key)) {
+                                ConfigurationSection section = holder.createSection("rule", map);
+                                if(section.getString("input") == null) {
+                                    logger.log(Level.WARNING, "Rule without input: {0}", map);
+                                    logger.log(Level.INFO, "Skipping this rule.");
+                                } else
+                                    addRule(section.getString("input"), section, logger);
+                            }
+                        }
+                        break;
+                    case "worlds":
+                        try {
+                            worlds.clear();
+                            for(String world : config.getStringList("worlds"))
+                                worlds.add(GetByName.worldId(world));
+                        } catch(IllegalArgumentException ex) {
+                            logger.log(Level.WARNING, ex.getMessage());
+                            logger.log(Level.INFO, "Enabling for all worlds.");
+                            worlds.clear();
+                        }
+                        break;
+                    case "unloaded-chunks":
+                        try {
+                            unloadedChunks = ChunkPolicy.get(config.getString(key));
+                        } catch(IllegalArgumentException ex) {
+                            logger.log(Level.WARNING, ex.getMessage());
+                            logger.log(Level.INFO, "Using default (dry).");
+                        }
+                        break;
+                    case "metrics-port":
+                        metricsPort = config.getInt(key, 0);
+                        if(metricsPort < 0 || metricsPort > 65535) {
+                            logger.log(Level.WARNING, "Invalid metrics port: {0}", metricsPort);
+                            logger.log(Level.INFO, "Metrics endpoint disabled.");
+                            metricsPort = 0;
+                        }
+                        break;
+                    case "batch-placement":
+                        batchPlacement = config.getBoolean(key, false);
+                        break;
+                    case "audit-hours":
+                        auditHours = config.getInt(key, 0);
+                        if(auditHours < 0) {
+                            logger.log(Level.WARNING, "Invalid audit hours: {0}", auditHours);
+                            logger.log(Level.INFO, "Audit log disabled.");
+                            auditHours = 0;
+                        }
+                        break;
+                    case "chunk-quota":
+                        chunkQuota = config.getInt(key, 0);
+                        if(chunkQuota < 0) {
+                            logger.log(Level.WARNING, "Invalid quota: {0}", chunkQuota);
+                            logger.log(Level.INFO, "Using default (unlimited).");
+                            chunkQuota = 0;
+                        }
+                        break;
+                }
+    }
+    
+    /**
+     * Parses one Rule, logs and skips it if it is invalid
+     * @param input Input block (or group), key of the Rule in config.yml
+     * @param section Section with result, needwater, area, quota and priority (and input, which is ignored)
+     * @param logger Logger for warnings
+     */
+    private void addRule(String input, ConfigurationSection section, Logger logger) {
+        try {
+            if(section.getString("result") == null)
+                throw new IllegalArgumentException("Rule for " + input + " has no result");
+            rules.add(new Rule(
+                    input,
+                    section.getString("result"),
+                    section.getString("needwater"),
+                    section.getStringList("area"),
+                    section.getInt("quota", 0),
+                    section.getInt("priority", 0),
+                    aliases,
+                    logger
+            ));
+        } catch(IllegalArgumentException ex) {
+            logger.log(Level.WARNING, ex.getMessage());
+            logger.log(Level.INFO, "Skipping this rule.");
+        }
+    }
+}
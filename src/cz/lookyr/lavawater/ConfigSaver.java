@@ -0,0 +1,259 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It writes config.yml on a background thread.
+ * Changes made within DELAY ticks are written together, from the snapshot current at the time of writing.
+ * The file is written to a temporary file first and then renamed, so it is never left half-written;
+ * it is not rewritten when its content is the same. Each time a binary copy (rules.dat) is written as well,
+ * so the next startup can skip parsing YAML.
+ * @author LookyR
+ */
+public final class ConfigSaver implements Runnable {
+    
+    /**
+     * Delay in ticks between first change and writing
+     */
+    public static final long DELAY = 40;
+    
+    /**
+     * Plugin to take snapshot from
+     */
+    private final LavaWater plugin;
+    
+    /**
+     * Target file
+     */
+    private final File file;
+    
+    /**
+     * Binary copy of target file
+     * @see SnapshotFile
+     */
+    private final File snapshot;
+    
+    /**
+     * true if there are changes not written yet
+     */
+    private final AtomicBoolean pending = new AtomicBoolean();
+    
+    /**
+     * Creates new saver
+     * @param plugin Plugin to take snapshot from
+     * @param file Target file, usually config.yml
+     * @param snapshot Binary copy of target file, usually rules.dat
+     */
+    public ConfigSaver(LavaWater plugin, File file, File snapshot) {
+        this.plugin = plugin;
+        this.file = file;
+        this.snapshot = snapshot;
+    }
+    
+    /**
+     * Schedules writing, does nothing if it is already scheduled
+     */
+    public final void schedule() {
+        if(pending.compareAndSet(false, true))
+            TaskScheduler.runAsyncLater(plugin, this, DELAY);
+    }
+    
+    /**
+     * Writes pending changes, called by scheduler
+     */ @Override
+    public final void run() {
+        if(pending.get())
+            flush();
+    }
+    
+    /**
+     * Writes pending changes now, waits for writing in progress
+     * - called from onDisable()
+     */
+    public final synchronized void flush() {
+        if(!pending.getAndSet(false))
+            return;
+        ConfigLoader content = content(plugin);
+        byte[] data = toYaml(content).saveToString().getBytes(Charset.forName("UTF-8"));
+        try {
+            if(!file.isFile() || !Arrays.equals(data, Files.readAllBytes(file.toPath())))
+                write(data);
+        } catch(IOException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Could not save " + file, ex);
+            return;
+        }
+        try {
+            SnapshotFile.write(snapshot, SnapshotFile.hash(data, new File(plugin.getDataFolder(), "aliases.yml")), content);
+        } catch(IOException ex) {
+            plugin.getLogger().log(Level.WARNING, "Could not save {0}: {1}", new Object[] {snapshot, ex.getMessage()});
+        }
+    }
+    
+    /**
+     * Writes data to a temporary file and renames it to target file
+     * @param data Content of the file
+     * @throws IOException When writing fails
+     */
+    private void write(byte[] data) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if(!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Could not create " + dir);
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try(OutputStream out = new FileOutputStream(temp)) {
+                out.write(data);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+    
+    /**
+     * Collects content of config.yml from current snapshot and settings of a plugin
+     * @param plugin Plugin to take snapshot and settings from
+     * @return New content, Rules in order of evaluation
+     */
+    public static ConfigLoader content(LavaWater plugin) {
+        RuleSet snapshot = plugin.getRuleSet();
+        ConfigLoader content = new ConfigLoader();
+        content.rules.addAll(snapshot.rules);
+        content.worlds.addAll(snapshot.worlds);
+        content.unloadedChunks = plugin.unloadedChunks;
+        content.batchPlacement = plugin.batchPlacement;
+        content.chunkQuota = plugin.chunkQuota;
+        content.metricsPort = plugin.metricsPort;
+        content.auditHours = plugin.auditHours;
+        return content;
+    }
+    
+    /**
+     * Creates configuration from content of config.yml
+     * @param content Rules and settings, see content()
+     * @return New configuration
+     */
+    public static YamlConfiguration toYaml(ConfigLoader content) {
+        YamlConfiguration config = new YamlConfiguration();
+        LinkedHashMap<String, List<Rule>> inputs = group(content.rules);
+        if(keepsOrder(inputs, content.rules))
+            for(Map.Entry<String, List<Rule>> entry : inputs.entrySet())
+                if(entry.getValue().size() == 1)
+                    config.createSection("rules." + entry.getKey(), toMap(entry.getValue().get(0)));
+                else {
+                    ArrayList<Map<String, Object>> list = new ArrayList(entry.getValue().size());
+                    for(Rule rule : entry.getValue())
+                        list.add(toMap(rule));
+                    config.set("rules." + entry.getKey(), list);
+                }
+        else {
+            ArrayList<Map<String, Object>> list = new ArrayList(content.rules.size());
+            for(Rule rule : content.rules) {
+                LinkedHashMap<String, Object> map = new LinkedHashMap();
+                map.put("input", rule.inputString);
+                map.putAll(toMap(rule));
+                list.add(map);
+            }
+            config.set("rules", list);
+        }
+        if(!content.worlds.isEmpty()) {
+            ArrayList<String> list = new ArrayList(content.worlds.size());
+            for(UUID world : content.worlds)
+                list.add(world.toString());
+            config.set("worlds", list);
+        }
+        config.set("unloaded-chunks", content.unloadedChunks.name().toLowerCase());
+        if(content.batchPlacement)
+            config.set("batch-placement", true);
+        if(content.chunkQuota != 0)
+            config.set("chunk-quota", content.chunkQuota);
+        if(content.metricsPort != 0)
+            config.set("metrics-port", content.metricsPort);
+        if(content.auditHours != 0)
+            config.set("audit-hours", content.auditHours);
+        return config;
+    }
+    
+    /**
+     * Groups Rules by input, used in toYaml()
+     * @param rules Rules in order
+     * @return Rules by input string, in order of first appearance
+     */
+    static LinkedHashMap<String, List<Rule>> group(List<Rule> rules) {
+        LinkedHashMap<String, List<Rule>> inputs = new LinkedHashMap();
+        for(Rule rule : rules) {
+            List<Rule> list = inputs.get(rule.inputString);
+            if(list == null)
+                inputs.put(rule.inputString, list = new ArrayList(1));
+            list.add(rule);
+        }
+        return inputs;
+    }
+    
+    /**
+     * Checks whether Rules grouped by input are evaluated in the same order after loading, used in toYaml()
+     * @param inputs Rules grouped by input, see group()
+     * @param rules Rules in order
+     * @return true if order of evaluation (by priority, then order of the file) doesn't change
+     */
+    static boolean keepsOrder(LinkedHashMap<String, List<Rule>> inputs, List<Rule> rules) {
+        ArrayList<Rule> grouped = new ArrayList(rules.size()), sorted = new ArrayList(rules);
+        for(List<Rule> list : inputs.values())
+            grouped.addAll(list);
+        Collections.sort(grouped, RuleSet.PRIORITY);
+        Collections.sort(sorted, RuleSet.PRIORITY);
+        for(int i = 0; i < sorted.size(); i++)
+            if(grouped.get(i) != sorted.get(i))
+                return false;
+        return true;
+    }
+    
+    /**
+     * Used in toYaml()
+     * @param rule Rule to write
+     * @return Values of the Rule section in config.yml
+     */
+    private static Map<String, Object> toMap(Rule rule) {
+        LinkedHashMap<String, Object> map = new LinkedHashMap();
+        map.put("result", rule.outputString);
+        map.put("needwater", rule.needWater ? "true" : "false");
+        map.put("area", rule.areasList());
+        if(rule.quota != 0)
+            map.put("quota", rule.quota);
+        if(rule.priority != 0)
+            map.put("priority", rule.priority);
+        return map;
+    }
+}
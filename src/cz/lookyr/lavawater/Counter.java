@@ -0,0 +1,70 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a counter which many threads can increment without contention.
+ * Each thread adds to one of several cells (each on its own cache line), sum() adds them up.
+ * @author LookyR
+ */
+public final class Counter {
+    
+    /**
+     * Distance between cells in longs, one cache line
+     */
+    private static final int PAD = 8;
+    
+    /**
+     * Number of cells - 1, power of 2 - 1
+     */
+    private static final int MASK;
+    
+    static {
+        int cells = 1;
+        while(cells < Runtime.getRuntime().availableProcessors())
+            cells <<= 1;
+        MASK = cells - 1;
+    }
+    
+    /**
+     * Use add() or sum()
+     */
+    private final AtomicLongArray cells = new AtomicLongArray((MASK + 1) * PAD);
+    
+    /**
+     * Adds a value
+     * @param x Value to add
+     */
+    public final void add(long x) {
+        cells.getAndAdd(((int)Thread.currentThread().getId() & MASK) * PAD, x);
+    }
+    
+    /**
+     * Adds one
+     */
+    public final void increment() {
+        add(1);
+    }
+    
+    /**
+     * Returns current sum, not an atomic snapshot when other threads are adding
+     * @return Sum of all added values
+     */
+    public final long sum() {
+        long sum = 0;
+        for(int i = 0; i < cells.length(); i += PAD)
+            sum += cells.get(i);
+        return sum;
+    }
+}
@@ -10,11 +10,24 @@
 
 package cz.lookyr.lavawater;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import static org.bukkit.Material.*;
 
@@ -58,187 +71,504 @@ public final class GetByName {
     }
     
     /**
-     * Get material with given name or id
+     * Get UUID of world with given name or UUID, the world doesn't need to be loaded.
+     * Names of unloaded worlds are resolved using uid.dat in the world folder.
+     * @param name Name or UUID as String or "null" (not to be confused with null pointer)
+     * @throws IllegalArgumentException If world doesn't exist
+     * @throws NullPointerException If name is null (not "null")
+     * @return UUID or null for "null"
+     */
+    public static UUID worldId(String name) {
+        name = name.trim();
+        if(name.equalsIgnoreCase("null"))
+            return null;
+        World world = Bukkit.getWorld(name);
+        if(world != null)
+            return world.getUID();
+        try {
+            return UUID.fromString(name);
+        } catch(IllegalArgumentException ex) {
+            // not an UUID, try world folder
+        }
+        File file = new File(new File(Bukkit.getWorldContainer(), name), "uid.dat");
+        if(file.isFile())
+            try(DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                return new UUID(in.readLong(), in.readLong());
+            } catch(IOException ex) {
+                throw new IllegalArgumentException("World not found: " + name, ex);
+            }
+        throw new IllegalArgumentException("World not found: " + name);
+    }
+    
+    /**
+     * Built-in aliases, first item is a Material, the others are its names and numeric id
+     */
+    private static final Object[][] ALIASES = {
+        {AIR, "0", "air"},
+        {STONE, "1", "stone"},
+        {GRASS, "2", "grass"},
+        {DIRT, "3", "dirt"},
+        {COBBLESTONE, "4", "cobblestone", "cobble"},
+        {WOOD, "5", "wood", "plank", "planks"},
+        {SAPLING, "6", "sapling"},
+        {BEDROCK, "7", "bedrock"},
+        {WATER, "8", "water"},
+        {STATIONARY_WATER, "9", "stationary_water", "stationary-water"},
+        {LAVA, "10", "lava"},
+        {STATIONARY_LAVA, "11", "stationary_lava", "stationary-lava"},
+        {SAND, "12", "sand"},
+        {GRAVEL, "13", "gravel"},
+        {GOLD_ORE, "14", "gold_ore", "gold-ore"},
+        {IRON_ORE, "15", "iron_ore", "iron-ore"},
+        {COAL_ORE, "16", "coal_ore", "coal-ore"},
+        {LOG, "17", "log"},
+        {LEAVES, "18", "leaves"},
+        {SPONGE, "19", "sponge"},
+        {GLASS, "20", "glass"},
+        {LAPIS_ORE, "21", "lapis_ore", "lapis-ore"},
+        {LAPIS_BLOCK, "22", "lapis_block", "lapis-block", "lapis", "lapiz"},
+        {DISPENSER, "23", "dispenser"},
+        {SANDSTONE, "24", "sandstone"},
+        {NOTE_BLOCK, "25", "note_block", "note-block"},
+        {BED_BLOCK, "26", "bed_block", "bed-block", "bed"},
+        {POWERED_RAIL, "27", "powered_rail", "powered-rail"},
+        {DETECTOR_RAIL, "28", "detector_rail", "detector-rail"},
+        {PISTON_STICKY_BASE, "29", "piston_sticky_base", "piston-sticky-base"},
+        {WEB, "30", "web"},
+        {LONG_GRASS, "31", "long_grass", "long-grass"},
+        {DEAD_BUSH, "32", "dead_bush", "dead-bush"},
+        {PISTON_BASE, "33", "piston_base", "piston-base"},
+        {PISTON_EXTENSION, "34", "piston_extension", "piston-extension"},
+        {WOOL, "35", "wool"},
+        {PISTON_MOVING_PIECE, "36", "piston_moving_piece", "piston-moving-piece"},
+        {YELLOW_FLOWER, "37", "yellow_flower", "yellow-flower"},
+        {RED_ROSE, "38", "red_rose", "red-rose"},
+        {BROWN_MUSHROOM, "39", "brown_mushroom", "brown-mushroom"},
+        {RED_MUSHROOM, "40", "red_mushroom", "red-mushroom"},
+        {GOLD_BLOCK, "41", "gold_block", "gold-block", "gold"},
+        {IRON_BLOCK, "42", "iron_block", "iron-block", "iron"},
+        {DOUBLE_STEP, "43", "double_step", "double-step"},
+        {STEP, "44", "step"},
+        {BRICK, "45", "brick"},
+        {TNT, "46", "tnt"},
+        {BOOKSHELF, "47", "bookshelf"},
+        {MOSSY_COBBLESTONE, "48", "mossy_cobblestone", "mossy-cobblestone"},
+        {OBSIDIAN, "49", "obsidian"},
+        {TORCH, "50", "torch"},
+        {FIRE, "51", "fire"},
+        {MOB_SPAWNER, "52", "mob_spawner", "mob-spawner"},
+        {WOOD_STAIRS, "53", "wood_stairs", "wood-stairs"},
+        {CHEST, "54", "chest"},
+        {REDSTONE_WIRE, "55", "redstone_wire", "redstone-wire", "redstone"},
+        {DIAMOND_ORE, "56", "diamond_ore", "diamond-ore"},
+        {DIAMOND_BLOCK, "57", "diamond_block", "diamond-block", "diamond"},
+        {WORKBENCH, "58", "workbench"},
+        {CROPS, "59", "crops"},
+        {SOIL, "60", "soil"},
+        {FURNACE, "61", "furnace"},
+        {BURNING_FURNACE, "62", "burning_furnace", "burning-furnace"},
+        {SIGN_POST, "63", "sign_post", "sign-post"},
+        {WOODEN_DOOR, "64", "wooden_door", "wooden-door"},
+        {LADDER, "65", "ladder"},
+        {RAILS, "66", "rails"},
+        {COBBLESTONE_STAIRS, "67", "cobblestone_stairs", "cobblestone-stairs"},
+        {WALL_SIGN, "68", "wall_sign", "wall-sign"},
+        {LEVER, "69", "lever"},
+        {STONE_PLATE, "70", "stone_plate", "stone-plate"},
+        {IRON_DOOR_BLOCK, "71", "iron_door_block", "iron-door-block", "iron_door", "iron-door"},
+        {WOOD_PLATE, "72", "wood_plate", "wood-plate"},
+        {REDSTONE_ORE, "73", "redstone_ore", "redstone-ore"},
+        {GLOWING_REDSTONE_ORE, "74", "glowing_redstone_ore", "glowing-redstone-ore"},
+        {REDSTONE_TORCH_OFF, "75", "redstone_torch_off", "redstone-torch-off"},
+        {REDSTONE_TORCH_ON, "76", "redstone_torch_on", "redstone-torch-on"},
+        {STONE_BUTTON, "77", "stone_button", "stone-button"},
+        {SNOW, "78", "snow"},
+        {ICE, "79", "ice"},
+        {SNOW_BLOCK, "80", "snow_block", "snow-block"},
+        {CACTUS, "81", "cactus"},
+        {CLAY, "82", "clay"},
+        {SUGAR_CANE_BLOCK, "83", "sugar_cane_block", "sugar-cane-block", "sugar_cane", "sugar-cane"},
+        {JUKEBOX, "84", "jukebox"},
+        {FENCE, "85", "fence"},
+        {PUMPKIN, "86", "pumpkin"},
+        {NETHERRACK, "87", "netherrack"},
+        {SOUL_SAND, "88", "soul_sand", "soul-sand"},
+        {GLOWSTONE, "89", "glowstone"},
+        {PORTAL, "90", "portal"},
+        {JACK_O_LANTERN, "91", "jack_o_lantern", "jack-o-lantern"},
+        {CAKE_BLOCK, "92", "cake_block", "cake-block", "cake"},
+        {DIODE_BLOCK_OFF, "93", "diode_block_off", "diode-block-off", "diode_off", "diode-off"},
+        {DIODE_BLOCK_ON, "94", "diode_block_on", "diode-block-on", "diode_on", "diode-on"},
+        //{STAINED_GLASS, "95", "stained_glass", "stained-glass"},
+        {TRAP_DOOR, "96", "trap_door", "trap-door"},
+        {MONSTER_EGGS, "97", "monster_eggs", "monster-eggs"},
+        {SMOOTH_BRICK, "98", "smooth_brick", "smooth-brick"},
+        {HUGE_MUSHROOM_1, "99", "huge_mushroom_1", "huge-mushroom-1"},
+        {HUGE_MUSHROOM_2, "100", "huge_mushroom_2", "huge-mushroom-2"},
+        {IRON_FENCE, "101", "iron_fence", "iron-fence"},
+        {THIN_GLASS, "102", "thin_glass", "thin-glass"},
+        {MELON_BLOCK, "103", "melon_block", "melon-block", "melon"},
+        {PUMPKIN_STEM, "104", "pumpkin_stem", "pumpkin-stem"},
+        {MELON_STEM, "105", "melon_stem", "melon-stem"},
+        {VINE, "106", "vine"},
+        {FENCE_GATE, "107", "fence_gate", "fence-gate"},
+        {BRICK_STAIRS, "108", "brick_stairs", "brick-stairs"},
+        {SMOOTH_STAIRS, "109", "smooth_stairs", "smooth-stairs"},
+        {MYCEL, "110", "mycel"},
+        {WATER_LILY, "111", "water_lily", "water-lily"},
+        {NETHER_BRICK, "112", "nether_brick", "nether-brick"},
+        {NETHER_FENCE, "113", "nether_fence", "nether-fence"},
+        {NETHER_BRICK_STAIRS, "114", "nether_brick_stairs", "nether-brick-stairs"},
+        {NETHER_WARTS, "115", "nether_warts", "nether-warts"},
+        {ENCHANTMENT_TABLE, "116", "enchantment_table", "enchantment-table"},
+        {BREWING_STAND, "117", "brewing_stand", "brewing-stand"},
+        {CAULDRON, "118", "cauldron"},
+        {ENDER_PORTAL, "119", "ender_portal", "ender-portal"},
+        {ENDER_PORTAL_FRAME, "120", "ender_portal_frame", "ender-portal-frame"},
+        {ENDER_STONE, "121", "ender_stone", "ender-stone"},
+        {DRAGON_EGG, "122", "dragon_egg", "dragon-egg"},
+        {REDSTONE_LAMP_OFF, "123", "redstone_lamp_off", "redstone-lamp-off"},
+        {REDSTONE_LAMP_ON, "124", "redstone_lamp_on", "redstone-lamp-on"},
+        {WOOD_DOUBLE_STEP, "125", "wood_double_step", "wood-double-step"},
+        {WOOD_STEP, "126", "wood_step", "wood-step"},
+        {COCOA, "127", "cocoa"},
+        {SANDSTONE_STAIRS, "128", "sandstone_stairs", "sandstone-stairs"},
+        {EMERALD_ORE, "129", "emerald_ore", "emerald-ore"},
+        {ENDER_CHEST, "130", "ender_chest", "ender-chest"},
+        {TRIPWIRE_HOOK, "131", "tripwire_hook", "tripwire-hook"},
+        {TRIPWIRE, "132", "tripwire", "string"},
+        {EMERALD_BLOCK, "133", "emerald_block", "emerald-block", "emerald"},
+        {SPRUCE_WOOD_STAIRS, "134", "spruce_wood_stairs", "spruce-wood-stairs"},
+        {BIRCH_WOOD_STAIRS, "135", "birch_wood_stairs", "birch-wood-stairs"},
+        {JUNGLE_WOOD_STAIRS, "136", "jungle_wood_stairs", "jungle-wood-stairs"},
+        {COMMAND, "137", "command"},
+        {BEACON, "138", "beacon"},
+        {COBBLE_WALL, "139", "cobble_wall", "cobble-wall"},
+        {FLOWER_POT, "140", "flower_pot", "flower-pot"},
+        {CARROT, "141", "carrot"},
+        {POTATO, "142", "potato"},
+        {WOOD_BUTTON, "143", "wood_button", "wood-button"},
+        {SKULL, "144", "skull"},
+        {ANVIL, "145", "anvil"},
+        {TRAPPED_CHEST, "146", "trapped_chest", "trapped-chest"},
+        {GOLD_PLATE, "147", "gold_plate", "gold-plate"},
+        {IRON_PLATE, "148", "iron_plate", "iron-plate"},
+        {REDSTONE_COMPARATOR_OFF, "149", "redstone_comparator_off", "redstone-comparator-off"},
+        {REDSTONE_COMPARATOR_ON, "150", "redstone_comparator_on", "redstone-comparator-on"},
+        {DAYLIGHT_DETECTOR, "151", "daylight_detector", "daylight-detector"},
+        {REDSTONE_BLOCK, "152", "redstone_block", "redstone-block"},
+        {QUARTZ_ORE, "153", "quartz_ore", "quartz-ore"},
+        {HOPPER, "154", "hopper"},
+        {QUARTZ_BLOCK, "155", "quartz_block", "quartz-block", "quartz"},
+        {QUARTZ_STAIRS, "156", "quartz_stairs", "quartz-stairs"},
+        {ACTIVATOR_RAIL, "157", "activator_rail", "activator-rail"},
+        {DROPPER, "158", "dropper"},
+        {STAINED_CLAY, "159", "stained_clay", "stained-clay"},
+        //{STAINED_GLASS_PANE, "160", "stained_glass_pane", "stained-glass-pane"},
+        //{LEAVES_2, "161", "leaves_2", "leaves-2"},
+        //{LOG_2, "162", "log_2", "log-2"},
+        //{ACACIA_STAIRS, "163", "acacia_stairs", "acacia-stairs"},
+        //{DARK_OAK_STAIRS, "164", "dark_oak_stairs", "dark-oak-stairs"},
+        {HAY_BLOCK, "170", "hay_block", "hay-block", "hay", "haystack", "hay_bale", "hay-bale"},
+        {CARPET, "171", "carpet"},
+        {HARD_CLAY, "172", "hard_clay", "hard-clay"},
+        {COAL_BLOCK, "173", "coal_block", "coal-block", "coal"},
+        //{PACKED_ICE, "174", "packed_ice", "packed-ice"},
+        //{DOUBLE_PLANT, "175", "double_plant", "double-plant"},
+    };
+    
+    /**
+     * Built-in groups, first item is the name, the others are its Materials
+     */
+    private static final Object[][] GROUPS = {
+        {"any_flower", YELLOW_FLOWER, RED_ROSE},
+        {"any_wool", WOOL},
+        {"any_mushroom", BROWN_MUSHROOM, RED_MUSHROOM},
+        {"any_plant", SAPLING, LONG_GRASS, DEAD_BUSH, YELLOW_FLOWER, RED_ROSE, BROWN_MUSHROOM, RED_MUSHROOM},
+        {"any_ore", COAL_ORE, IRON_ORE, GOLD_ORE, DIAMOND_ORE, LAPIS_ORE, REDSTONE_ORE, GLOWING_REDSTONE_ORE,
+                EMERALD_ORE, QUARTZ_ORE},
+        {"any_torch", TORCH, REDSTONE_TORCH_ON, REDSTONE_TORCH_OFF},
+        {"any_rail", RAILS, POWERED_RAIL, DETECTOR_RAIL, ACTIVATOR_RAIL},
+    };
+    
+    /**
+     * Use aliases(), built-in aliases and groups and those loaded by loadAliases() or published by setAliases()
+     */
+    private static volatile Aliases current = new Aliases(build(Collections.<String, Material>emptyMap()), buildGroups());
+    
+    /**
+     * Get material with given name or id, using current aliases
      * @param name Name or id as String
      * @throws IllegalArgumentException If material doesn't exist or is not a block
      * @throws NullPointerException If name is null
      * @return Material enum instance
      */
     public static Material material(String name) {
-        switch(name.trim().toLowerCase()) {
-            case "0": case "air": return AIR;
-            case "1": case "stone": return STONE;
-            case "2": case "grass": return GRASS;
-            case "3": case "dirt": return DIRT;
-            case "4": case "cobblestone": case "cobble": return COBBLESTONE;
-            case "5": case "wood": case "plank": case "planks": return WOOD;
-            case "6": case "sapling": return SAPLING;
-            case "7": case "bedrock": return BEDROCK;
-            case "8": case "water": return WATER;
-            case "9": case "stationary_water": case "stationary-water": return STATIONARY_WATER;
-            case "10": case "lava": return LAVA;
-            case "11": case "stationary_lava": case "stationary-lava": return STATIONARY_LAVA;
-            case "12": case "sand": return SAND;
-            case "13": case "gravel": return GRAVEL;
-            case "14": case "gold_ore": case "gold-ore": return GOLD_ORE;
-            case "15": case "iron_ore": case "iron-ore": return IRON_ORE;
-            case "16": case "coal_ore": case "coal-ore": return COAL_ORE;
-            case "17": case "log": return LOG;
-            case "18": case "leaves": return LEAVES;
-            case "19": case "sponge": return SPONGE;
-            case "20": case "glass": return GLASS;
-            case "21": case "lapis_ore": case "lapis-ore": return LAPIS_ORE;
-            case "22": case "lapis_block": case "lapis-block": case "lapis": case "lapiz": return LAPIS_BLOCK;
-            case "23": case "dispenser": return DISPENSER;
-            case "24": case "sandstone": return SANDSTONE;
-            case "25": case "note_block": case "note-block": return NOTE_BLOCK;
-            case "26": case "bed_block": case "bed-block": case "bed": return BED_BLOCK;
-            case "27": case "powered_rail": case "powered-rail": return POWERED_RAIL;
-            case "28": case "detector_rail": case "detector-rail": return DETECTOR_RAIL;
-            case "29": case "piston_sticky_base": case "piston-sticky-base": return PISTON_STICKY_BASE;
-            case "30": case "web": return WEB;
-            case "31": case "long_grass": case "long-grass": return LONG_GRASS;
-            case "32": case "dead_bush": case "dead-bush": return DEAD_BUSH;
-            case "33": case "piston_base": case "piston-base": return PISTON_BASE;
-            case "34": case "piston_extension": case "piston-extension": return PISTON_EXTENSION;
-            case "35": case "wool": return WOOL;
-            case "36": case "piston_moving_piece": case "piston-moving-piece": return PISTON_MOVING_PIECE;
-            case "37": case "yellow_flower": case "yellow-flower": return YELLOW_FLOWER;
-            case "38": case "red_rose": case "red-rose": return RED_ROSE;
-            case "39": case "brown_mushroom": case "brown-mushroom": return BROWN_MUSHROOM;
-            case "40": case "red_mushroom": case "red-mushroom": return RED_MUSHROOM;
-            case "41": case "gold_block": case "gold-block": case "gold": return GOLD_BLOCK;
-            case "42": case "iron_block": case "iron-block": case "iron": return IRON_BLOCK;
-            case "43": case "double_step": case "double-step": return DOUBLE_STEP;
-            case "44": case "step": return STEP;
-            case "45": case "brick": return BRICK;
-            case "46": case "tnt": return TNT;
-            case "47": case "bookshelf": return BOOKSHELF;
-            case "48": case "mossy_cobblestone": case "mossy-cobblestone": return MOSSY_COBBLESTONE;
-            case "49": case "obsidian": return OBSIDIAN;
-            case "50": case "torch": return TORCH;
-            case "51": case "fire": return FIRE;
-            case "52": case "mob_spawner": case "mob-spawner": return MOB_SPAWNER;
-            case "53": case "wood_stairs": case "wood-stairs": return WOOD_STAIRS;
-            case "54": case "chest": return CHEST;
-            case "55": case "redstone_wire": case "redstone-wire": case "redstone": return REDSTONE_WIRE;
-            case "56": case "diamond_ore": case "diamond-ore": return DIAMOND_ORE;
-            case "57": case "diamond_block": case "diamond-block": case "diamond": return DIAMOND_BLOCK;
-            case "58": case "workbench": return WORKBENCH;
-            case "59": case "crops": return CROPS;
-            case "60": case "soil": return SOIL;
-            case "61": case "furnace": return FURNACE;
-            case "62": case "burning_furnace": case "burning-furnace": return BURNING_FURNACE;
-            case "63": case "sign_post": case "sign-post": return SIGN_POST;
-            case "64": case "wooden_door": case "wooden-door": return WOODEN_DOOR;
-            case "65": case "ladder": return LADDER;
-            case "66": case "rails": return RAILS;
-            case "67": case "cobblestone_stairs": case "cobblestone-stairs": return COBBLESTONE_STAIRS;
-            case "68": case "wall_sign": case "wall-sign": return WALL_SIGN;
-            case "69": case "lever": return LEVER;
-            case "70": case "stone_plate": case "stone-plate": return STONE_PLATE;
-            case "71": case "iron_door_block": case "iron-door-block": case "iron_door": case "iron-door": return IRON_DOOR_BLOCK;
-            case "72": case "wood_plate": case "wood-plate": return WOOD_PLATE;
-            case "73": case "redstone_ore": case "redstone-ore": return REDSTONE_ORE;
-            case "74": case "glowing_redstone_ore": case "glowing-redstone-ore": return GLOWING_REDSTONE_ORE;
-            case "75": case "redstone_torch_off": case "redstone-torch-off": return REDSTONE_TORCH_OFF;
-            case "76": case "redstone_torch_on": case "redstone-torch-on": return REDSTONE_TORCH_ON;
-            case "77": case "stone_button": case "stone-button": return STONE_BUTTON;
-            case "78": case "snow": return SNOW;
-            case "79": case "ice": return ICE;
-            case "80": case "snow_block": case "snow-block": return SNOW_BLOCK;
-            case "81": case "cactus": return CACTUS;
-            case "82": case "clay": return CLAY;
-            case "83": case "sugar_cane_block": case "sugar-cane-block": case "sugar_cane": case "sugar-cane": return SUGAR_CANE_BLOCK;
-            case "84": case "jukebox": return JUKEBOX;
-            case "85": case "fence": return FENCE;
-            case "86": case "pumpkin": return PUMPKIN;
-            case "87": case "netherrack": return NETHERRACK;
-            case "88": case "soul_sand": case "soul-sand": return SOUL_SAND;
-            case "89": case "glowstone": return GLOWSTONE;
-            case "90": case "portal": return PORTAL;
-            case "91": case "jack_o_lantern": case "jack-o-lantern": return JACK_O_LANTERN;
-            case "92": case "cake_block": case "cake-block": case "cake": return CAKE_BLOCK;
-            case "93": case "diode_block_off": case "diode-block-off": case "diode_off": case "diode-off": return DIODE_BLOCK_OFF;
-            case "94": case "diode_block_on": case "diode-block-on": case "diode_on": case "diode-on": return DIODE_BLOCK_ON;
-            //case "95": case "stained_glass": case "stained-glass": return STAINED_GLASS;
-            case "96": case "trap_door": case "trap-door": return TRAP_DOOR;
-            case "97": case "monster_eggs": case "monster-eggs": return MONSTER_EGGS;
-            case "98": case "smooth_brick": case "smooth-brick": return SMOOTH_BRICK;
-            case "99": case "huge_mushroom_1": case "huge-mushroom-1": return HUGE_MUSHROOM_1;
-            case "100": case "huge_mushroom_2": case "huge-mushroom-2": return HUGE_MUSHROOM_2;
-            case "101": case "iron_fence": case "iron-fence": return IRON_FENCE;
-            case "102": case "thin_glass": case "thin-glass": return THIN_GLASS;
-            case "103": case "melon_block": case "melon-block": case "melon": return MELON_BLOCK;
-            case "104": case "pumpkin_stem": case "pumpkin-stem": return PUMPKIN_STEM;
-            case "105": case "melon_stem": case "melon-stem": return MELON_STEM;
-            case "106": case "vine": return VINE;
-            case "107": case "fence_gate": case "fence-gate": return FENCE_GATE;
-            case "108": case "brick_stairs": case "brick-stairs": return BRICK_STAIRS;
-            case "109": case "smooth_stairs": case "smooth-stairs": return SMOOTH_STAIRS;
-            case "110": case "mycel": return MYCEL;
-            case "111": case "water_lily": case "water-lily": return WATER_LILY;
-            case "112": case "nether_brick": case "nether-brick": return NETHER_BRICK;
-            case "113": case "nether_fence": case "nether-fence": return NETHER_FENCE;
-            case "114": case "nether_brick_stairs": case "nether-brick-stairs": return NETHER_BRICK_STAIRS;
-            case "115": case "nether_warts": case "nether-warts": return NETHER_WARTS;
-            case "116": case "enchantment_table": case "enchantment-table": return ENCHANTMENT_TABLE;
-            case "117": case "brewing_stand": case "brewing-stand": return BREWING_STAND;
-            case "118": case "cauldron": return CAULDRON;
-            case "119": case "ender_portal": case "ender-portal": return ENDER_PORTAL;
-            case "120": case "ender_portal_frame": case "ender-portal-frame": return ENDER_PORTAL_FRAME;
-            case "121": case "ender_stone": case "ender-stone": return ENDER_STONE;
-            case "122": case "dragon_egg": case "dragon-egg": return DRAGON_EGG;
-            case "123": case "redstone_lamp_off": case "redstone-lamp-off": return REDSTONE_LAMP_OFF;
-            case "124": case "redstone_lamp_on": case "redstone-lamp-on": return REDSTONE_LAMP_ON;
-            case "125": case "wood_double_step": case "wood-double-step": return WOOD_DOUBLE_STEP;
-            case "126": case "wood_step": case "wood-step": return WOOD_STEP;
-            case "127": case "cocoa": return COCOA;
-            case "128": case "sandstone_stairs": case "sandstone-stairs": return SANDSTONE_STAIRS;
-            case "129": case "emerald_ore": case "emerald-ore": return EMERALD_ORE;
-            case "130": case "ender_chest": case "ender-chest": return ENDER_CHEST;
-            case "131": case "tripwire_hook": case "tripwire-hook": return TRIPWIRE_HOOK;
-            case "132": case "tripwire": case "string": return TRIPWIRE;
-            case "133": case "emerald_block": case "emerald-block": case "emerald": return EMERALD_BLOCK;
-            case "134": case "spruce_wood_stairs": case "spruce-wood-stairs": return SPRUCE_WOOD_STAIRS;
-            case "135": case "birch_wood_stairs": case "birch-wood-stairs": return BIRCH_WOOD_STAIRS;
-            case "136": case "jungle_wood_stairs": case "jungle-wood-stairs": return JUNGLE_WOOD_STAIRS;
-            case "137": case "command": return COMMAND;
-            case "138": case "beacon": return BEACON;
-            case "139": case "cobble_wall": case "cobble-wall": return COBBLE_WALL;
-            case "140": case "flower_pot": case "flower-pot": return FLOWER_POT;
-            case "141": case "carrot": return CARROT;
-            case "142": case "potato": return POTATO;
-            case "143": case "wood_button": case "wood-button": return WOOD_BUTTON;
-            case "144": case "skull": return SKULL;
-            case "145": case "anvil": return ANVIL;
-            case "146": case "trapped_chest": case "trapped-chest": return TRAPPED_CHEST;
-            case "147": case "gold_plate": case "gold-plate": return GOLD_PLATE;
-            case "148": case "iron_plate": case "iron-plate": return IRON_PLATE;
-            case "149": case "redstone_comparator_off": case "redstone-comparator-off": return REDSTONE_COMPARATOR_OFF;
-            case "150": case "redstone_comparator_on": case "redstone-comparator-on": return REDSTONE_COMPARATOR_ON;
-            case "151": case "daylight_detector": case "daylight-detector": return DAYLIGHT_DETECTOR;
-            case "152": case "redstone_block": case "redstone-block": return REDSTONE_BLOCK;
-            case "153": case "quartz_ore": case "quartz-ore": return QUARTZ_ORE;
-            case "154": case "hopper": return HOPPER;
-            case "155": case "quartz_block": case "quartz-block": case "quartz": return QUARTZ_BLOCK;
-            case "156": case "quartz_stairs": case "quartz-stairs": return QUARTZ_STAIRS;
-            case "157": case "activator_rail": case "activator-rail": return ACTIVATOR_RAIL;
-            case "158": case "dropper": return DROPPER;
-            case "159": case "stained_clay": case "stained-clay": return STAINED_CLAY;
-            //case "160": case "stained_glass_pane": case "stained-glass-pane": return STAINED_GLASS_PANE;
-            //case "161": case "leaves_2": case "leaves-2": return LEAVES_2;
-            //case "162": case "log_2": case "log-2": return LOG_2;
-            //case "163": case "acacia_stairs": case "acacia-stairs": return ACACIA_STAIRS;
-            //case "164": case "dark_oak_stairs": case "dark-oak-stairs": return DARK_OAK_STAIRS;
-            case "170": case "hay_block": case "hay-block": case "hay": case "haystack": case "hay_bale": case "hay-bale": return HAY_BLOCK;
-            case "171": case "carpet": return CARPET;
-            case "172": case "hard_clay": case "hard-clay": return HARD_CLAY;
-            case "173": case "coal_block": case "coal-block": case "coal": return COAL_BLOCK;
-            //case "174": case "packed_ice": case "packed-ice": return PACKED_ICE;
-            //case "175": case "double_plant": case "double-plant": return DOUBLE_PLANT;
-            default:
+        return current.material(name);
+    }
+    
+    /**
+     * Get set of materials with given name using current groups: a group, "*" for any block lava can flood, or a single block
+     * @param name Group name, "*", or name or id of a block
+     * @throws IllegalArgumentException If there is no such group and material doesn't exist or is not a block
+     * @throws NullPointerException If name is null
+     * @return MaterialSet, shared for groups
+     */
+    public static MaterialSet materials(String name) {
+        return current.materials(name);
+    }
+    
+    /**
+     * Returns name or id of a block without its data value, e.g. "wool" for "wool:14"
+     * @param name Name or id, optionally followed by ':' and data value
+     * @return Part before the last ':'
+     * @throws NullPointerException If name is null
+     */
+    public static String type(String name) {
+        int colon = name.lastIndexOf(':');
+        return colon < 0 ? name : name.substring(0, colon);
+    }
+    
+    /**
+     * Returns data value of a block, e.g. 14 for "wool:14"
+     * @param name Name or id, optionally followed by ':' and data value (0 - 15) or '*'
+     * @return Data value, -1 if there is none or it is '*' (any)
+     * @throws IllegalArgumentException If data value is not a number from 0 to 15
+     * @throws NullPointerException If name is null
+     */
+    public static int data(String name) {
+        int colon = name.lastIndexOf(':');
+        if(colon < 0)
+            return -1;
+        String data = name.substring(colon + 1).trim();
+        if(data.equals("*"))
+            return -1;
+        try {
+            int value = Integer.parseInt(data);
+            if(value >= 0 && value <= 15)
+                return value;
+        } catch(NumberFormatException ex) {
+        }
+        throw new IllegalArgumentException("Invalid data value: " + name);
+    }
+    
+    /**
+     * Returns all known names and ids of materials
+     * @return Sorted unmodifiable list of lowercase aliases
+     */
+    public static List<String> materialNames() {
+        return current.table.names();
+    }
+    
+    /**
+     * Returns names of all groups, including "*"
+     * @return Sorted list of lowercase group names
+     */
+    public static List<String> groupNames() {
+        ArrayList<String> list = new ArrayList(current.groups.keySet());
+        Collections.sort(list);
+        return list;
+    }
+    
+    /**
+     * Returns index of all names and ids of materials and all group names, used for tab completion
+     * @return PrefixIndex built with current aliases
+     */
+    public static PrefixIndex completions() {
+        return current.completions;
+    }
+    
+    /**
+     * Returns current aliases and groups
+     * @return Aliases used by material(), materials() and completions()
+     */
+    public static Aliases aliases() {
+        return current;
+    }
+    
+    /**
+     * Replaces current aliases and groups, all of them at once
+     * @param aliases Aliases returned by readAliases()
+     * @throws NullPointerException If aliases is null
+     */
+    public static void setAliases(Aliases aliases) {
+        if(aliases == null)
+            throw new NullPointerException();
+        current = aliases;
+    }
+    
+    /**
+     * Loads user-defined aliases and groups, replacing previously loaded ones, see readAliases()
+     * @param file YAML file, usually aliases.yml in the plugin folder, doesn't need to exist
+     * @param logger Logger for warnings
+     */
+    public static void loadAliases(File file, Logger logger) {
+        setAliases(readAliases(file, logger));
+    }
+    
+    /**
+     * Reads user-defined aliases and groups without replacing current ones, see setAliases().
+     * Each key of the file is a new alias, its value is a known alias or Material name, e.g. "glowstone: 89",
+     * or a new group if its value is a list of aliases and groups, e.g. "any_stone: [stone, cobblestone, any_ore]".
+     * Invalid entries are logged and skipped.
+     * @param file YAML file, usually aliases.yml in the plugin folder, doesn't need to exist
+     * @param logger Logger for warnings
+     * @return Built-in and user-defined aliases and groups
+     */
+    public static Aliases readAliases(File file, Logger logger) {
+        LinkedHashMap<String, Material> extra = new LinkedHashMap();
+        LinkedHashMap<String, List<String>> lists = new LinkedHashMap();
+        if(file.isFile()) {
+            AliasTable builtIn = build(extra);
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+            for(String key : config.getKeys(false)) {
+                if(config.isList(key)) {
+                    lists.put(key, config.getStringList(key));
+                    continue;
+                }
+                String value = config.getString(key);
+                Material material = (value == null) ? null : builtIn.get(value);
+                if(material == null && value != null)
+                    material = Material.matchMaterial(value.trim());
+                if(material == null || !material.isBlock())
+                    logger.log(Level.WARNING, "Invalid alias \"{0}\": {1} doesn''t exist or is not a block.", new Object[] {key, value});
+                else
+                    extra.put(key, material);
+            }
+        }
+        AliasTable table = build(extra);
+        Map<String, MaterialSet> sets = buildGroups();
+        for(Map.Entry<String, List<String>> entry : lists.entrySet()) {
+            String name = entry.getKey().trim().toLowerCase();
+            ArrayList<Material> members = new ArrayList();
+            for(String member : entry.getValue()) {
+                MaterialSet group = sets.get(member.trim().toLowerCase());
+                Material material = (group == null) ? table.get(member) : null;
+                if(group != null)
+                    members.addAll(group.materials());
+                else if(material != null && material.isBlock())
+                    members.add(material);
+                else
+                    logger.log(Level.WARNING, "Invalid group \"{0}\": {1} doesn''t exist or is not a block.", new Object[] {name, member});
+            }
+            if(members.isEmpty())
+                logger.log(Level.WARNING, "Invalid group \"{0}\": no blocks.", name);
+            else
+                sets.put(name, new MaterialSet(name, members));
+        }
+        return new Aliases(table, sets);
+    }
+    
+    /**
+     * Used in readAliases()
+     * @param extra User-defined aliases
+     * @return Table of built-in and user-defined aliases
+     */
+    private static AliasTable build(Map<String, Material> extra) {
+        ArrayList<String> names = new ArrayList();
+        ArrayList<Material> materials = new ArrayList();
+        for(Object[] row : ALIASES)
+            for(int i = 1; i < row.length; i++) {
+                names.add((String)row[i]);
+                materials.add((Material)row[0]);
+            }
+        for(Map.Entry<String, Material> entry : extra.entrySet()) {
+            names.add(entry.getKey());
+            materials.add(entry.getValue());
+        }
+        return new AliasTable(names, materials);
+    }
+    
+    /**
+     * Used in Aliases constructor
+     * @param table Aliases
+     * @param sets Groups
+     * @return Index of aliases and group names
+     */
+    private static PrefixIndex buildCompletions(AliasTable table, Map<String, MaterialSet> sets) {
+        ArrayList<String> words = new ArrayList(table.names());
+        words.addAll(sets.keySet());
+        return new PrefixIndex(words);
+    }
+    
+    /**
+     * Used in readAliases()
+     * @return New map of built-in groups by name
+     */
+    private static Map<String, MaterialSet> buildGroups() {
+        HashMap<String, MaterialSet> map = new HashMap();
+        ArrayList<Material> any = new ArrayList();
+        for(Material material : Material.values())
+            if(material.isBlock() && material != AIR && material != WATER && material != STATIONARY_WATER
+                    && material != LAVA && material != STATIONARY_LAVA)
+                any.add(material);
+        map.put("*", new MaterialSet("*", any));
+        for(Object[] row : GROUPS) {
+            ArrayList<Material> members = new ArrayList();
+            for(int i = 1; i < row.length; i++)
+                members.add((Material)row[i]);
+            map.put((String)row[0], new MaterialSet((String)row[0], members));
+        }
+        return map;
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It holds aliases, groups and their completions read from one aliases.yml, so they are replaced together
+     * and rules can be parsed with them before they are published.
+     */
+    public static final class Aliases {
+        
+        /**
+         * Built-in and user-defined aliases
+         */
+        private final AliasTable table;
+        
+        /**
+         * Built-in and user-defined groups by lowercase name
+         */
+        private final Map<String, MaterialSet> groups;
+        
+        /**
+         * All aliases and group names
+         */
+        private final PrefixIndex completions;
+        
+        /**
+         * Used in readAliases()
+         * @param table
+         * @param groups
+         */
+        private Aliases(AliasTable table, Map<String, MaterialSet> groups) {
+            this.table = table;
+            this.groups = groups;
+            completions = buildCompletions(table, groups);
+        }
+        
+        /**
+         * Get material with given name or id
+         * @param name Name or id as String
+         * @throws IllegalArgumentException If material doesn't exist or is not a block
+         * @throws NullPointerException If name is null
+         * @return Material enum instance
+         */
+        public final Material material(String name) {
+            Material material = table.get(name);
+            if(material == null)
                 throw new IllegalArgumentException(name + " doesn't exist or is not a block.");
+            return material;
+        }
+        
+        /**
+         * Get set of materials with given name: a group, "*" for any block lava can flood, or a single block
+         * @param name Group name, "*", or name or id of a block
+         * @throws IllegalArgumentException If there is no such group and material doesn't exist or is not a block
+         * @throws NullPointerException If name is null
+         * @return MaterialSet, shared for groups
+         */
+        public final MaterialSet materials(String name) {
+            MaterialSet group = groups.get(name.trim().toLowerCase());
+            return group != null ? group : MaterialSet.of(material(name));
         }
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a latency histogram with power-of-two buckets in nanoseconds.
+ * Bucket i counts durations shorter than 2^(i+1) ns (bucket 0 also counts 0 ns), the last one counts the rest.
+ * Recording costs two Counter additions.
+ * @author LookyR
+ */
+public final class Histogram {
+    
+    /**
+     * Number of buckets, the last one is unbounded (above ~1 s)
+     */
+    public static final int BUCKETS = 31;
+    
+    /**
+     * Use record() or count()
+     */
+    private final Counter[] buckets = new Counter[BUCKETS];
+    
+    /**
+     * Use record() or sum()
+     */
+    private final Counter sum = new Counter();
+    
+    /**
+     * Creates new empty histogram
+     */
+    public Histogram() {
+        for(int i = 0; i < BUCKETS; i++)
+            buckets[i] = new Counter();
+    }
+    
+    /**
+     * Records one duration
+     * @param nanos Duration in nanoseconds
+     */
+    public final void record(long nanos) {
+        if(nanos < 0)
+            nanos = 0;
+        buckets[Math.min(BUCKETS - 1, Math.max(0, 63 - Long.numberOfLeadingZeros(nanos)))].increment();
+        sum.add(nanos);
+    }
+    
+    /**
+     * Returns upper bound of a bucket
+     * @param bucket Bucket number
+     * @return Upper bound in nanoseconds (exclusive), Long.MAX_VALUE for the last bucket
+     */
+    public static long bound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 2L << bucket;
+    }
+    
+    /**
+     * Returns number of durations in a bucket
+     * @param bucket Bucket number
+     * @return Number of recorded durations
+     */
+    public final long count(int bucket) {
+        return buckets[bucket].sum();
+    }
+    
+    /**
+     * Returns number of all durations
+     * @return Number of recorded durations
+     */
+    public final long count() {
+        long count = 0;
+        for(Counter bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+    
+    /**
+     * Returns sum of all durations
+     * @return Sum in nanoseconds
+     */
+    public final long sum() {
+        return sum.sum();
+    }
+    
+    /**
+     * Returns approximate quantile
+     * @param q Quantile, 0 to 1
+     * @return Upper bound of the bucket containing the quantile in nanoseconds, 0 if there are no durations
+     */
+    public final long quantile(double q) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            total += counts[i] = count(i);
+        if(total == 0)
+            return 0;
+        long rank = (long)Math.ceil(q * total), seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            if((seen += counts[i]) >= rank)
+                return bound(i);
+        return bound(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a map with primitive int keys (open addressing, linear probing), so lookups don't box.
+ * Not thread-safe, build it first and then only read it.
+ * @param <V> Type of values
+ * @author LookyR
+ */
+public final class IntMap<V> {
+    
+    /**
+     * Use get() or put()
+     */
+    private int[] keys;
+    
+    /**
+     * Use get() or put(), null means empty slot
+     */
+    private Object[] values;
+    
+    /**
+     * Number of entries
+     */
+    private int size;
+    
+    /**
+     * Creates new empty map
+     * @param expected Expected number of entries
+     */
+    public IntMap(int expected) {
+        int capacity = 8;
+        while(capacity < expected * 2)
+            capacity <<= 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+    
+    /**
+     * Used in get() and put()
+     * @param key
+     * @return Hash of the key
+     */
+    private static int hash(int key) {
+        key *= 0x9E3779B9;
+        return key ^ (key >>> 16);
+    }
+    
+    /**
+     * Returns value for given key
+     * @param key Key
+     * @return Value or null if there is none
+     */
+    public final V get(int key) {
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if(value == null)
+                return null;
+            if(keys[i] == key)
+                return (V)value;
+        }
+    }
+    
+    /**
+     * Sets value for given key
+     * @param key Key
+     * @param value Value, not null
+     * @return Previous value or null
+     * @throws NullPointerException When value is null
+     */
+    public final V put(int key, V value) {
+        if(value == null)
+            throw new NullPointerException();
+        if(size * 2 >= keys.length)
+            grow();
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Object old = values[i];
+            if(old == null) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return null;
+            }
+            if(keys[i] == key) {
+                values[i] = value;
+                return (V)old;
+            }
+        }
+    }
+    
+    /**
+     * Returns number of entries
+     * @return Number of entries
+     */
+    public final int size() {
+        return size;
+    }
+    
+    /**
+     * Doubles the capacity, used in put()
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++)
+            if(oldValues[i] != null)
+                put(oldKeys[i], (V)oldValues[i]);
+    }
+}
@@ -10,23 +10,42 @@
 
 package cz.lookyr.lavawater;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
 import java.util.logging.Level;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.EventExecutor;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.World;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import static org.bukkit.Material.LAVA;
@@ -47,16 +66,110 @@ import static org.bukkit.block.BlockFace.SOUTH;
 public final class LavaWater extends JavaPlugin implements Listener {
     
     /**
-     * List of Rules
-     * @see Rule
+     * Current snapshot of Rules, replaced as a whole on every change
+     * @see RuleSet
      */
-    public final ArrayList<Rule> rules = new ArrayList();
-
+    private volatile RuleSet ruleSet = RuleSet.EMPTY;
+    
+    /**
+     * Registered for BlockFromToEvent only while some Rule can apply, so an idle plugin adds no cost to lava flow
+     * @see #updateListener()
+     */
+    private final Listener flowListener = new Listener() {};
+    
+    /**
+     * Calls onBlockFromTo() for events received by flowListener
+     */
+    private final EventExecutor flowExecutor = new EventExecutor() {
+        @Override
+        public void execute(Listener listener, Event event) {
+            if(event instanceof BlockFromToEvent)
+                onBlockFromTo((BlockFromToEvent)event);
+        }
+    };
+    
+    /**
+     * true while flowListener is registered, changed only while holding flowListener
+     */
+    private volatile boolean listening = false;
+    
+    /**
+     * Subcommands offered by onTabComplete()
+     */
+    private static final PrefixIndex SUBCOMMANDS = new PrefixIndex(Arrays.asList(
+            "help", "list", "add", "remove", "reload", "import", "export", "stats", "audit"));
+    
+    /**
+     * Sides checked for water, in order
+     */
+    private static final BlockFace[] SIDES = {WEST, EAST, NORTH, SOUTH};
+    
+    /**
+     * Type IDs compared in findWater(), so it doesn't need a Block object
+     */
+    private static final int WATER_ID = WATER.getId(), STATIONARY_WATER_ID = STATIONARY_WATER.getId();
+    
+    /**
+     * What to do when a neighbor block of the water check is in an unloaded chunk
+     * @see ChunkPolicy
+     */
+    public volatile ChunkPolicy unloadedChunks = ChunkPolicy.DRY;
+    
+    /**
+     * Maximum number of blocks generated per minute in one chunk, 0 for unlimited
+     * @see QuotaFile
+     */
+    public volatile int chunkQuota = 0;
+    
+    /**
+     * true to place generated blocks at once in the next tick, without physics
+     * @see PlacementQueue
+     */
+    public volatile boolean batchPlacement = false;
+    
+    /**
+     * Generated blocks waiting for the next tick, used when batchPlacement is true
+     */
+    private final PlacementQueue placements = new PlacementQueue(this);
+    
+    /**
+     * Token buckets of chunks and Rules, opened in onEnable(), null if quota.dat can't be used
+     */
+    private volatile QuotaFile quotas;
+    
+    /**
+     * Regions of regions.yml, registered as RegionProvider "local"
+     * @see Regions
+     */
+    private final LocalRegions localRegions = new LocalRegions();
+    
+    /**
+     * Writes config.yml in background, created in onEnable()
+     * @see ConfigSaver
+     */
+    private ConfigSaver saver;
+    
+    /**
+     * Port of the Prometheus endpoint on 127.0.0.1, 0 for none
+     * @see Metrics
+     */
+    public volatile int metricsPort = 0;
+    
+    /**
+     * Hours of audit log kept, 0 for no audit log
+     * @see AuditLog
+     */
+    public volatile int auditHours = 0;
+    
+    /**
+     * Log of generated blocks, null if auditHours is 0
+     */
+    private volatile AuditLog audit;
+    
     /**
-     * List of Worlds
-     * @see World
+     * Prometheus endpoint, created in onEnable()
      */
-    public final HashSet<World> worlds = new HashSet();
+    private Metrics metrics;
     
     /**
      * Registers event handlers, initializes list of replaced blocks
@@ -66,51 +179,64 @@ public final class LavaWater extends JavaPlugin implements Listener {
     public final void onEnable() {
         getServer().getPluginManager().registerEvents(this, this);
         saveDefaultConfig();
-        FileConfiguration config = getConfig();
-        rules.clear();
-        worlds.clear();
-        worlds.addAll(Bukkit.getWorlds());
-        for(String key : config.getKeys(true))
-            if(key.startsWith("rules.")) {
-                if(key.lastIndexOf(".") == 5)
-                    try {
-                        rules.add(new Rule(
-                                key.substring(6),
-                                config.getString(key + ".result"),
-                                config.getString(key + ".needwater"),
-                                config.getStringList(key + ".area"),
-                                getLogger()
-                        ));
-                    } catch(IllegalArgumentException ex) {
-                        getLogger().log(Level.WARNING, ex.getMessage());
-                        getLogger().log(Level.INFO, "Skipping this rule.");
-                    }
-            } else
-                switch(key) {
-                    case "worlds":
-                        try {
-                            worlds.clear();
-                            for(String world : config.getStringList("worlds"))
-                                worlds.add(GetByName.world(world));
-                        } catch(IllegalArgumentException ex) {
-                            getLogger().log(Level.WARNING, ex.getMessage());
-                            getLogger().log(Level.INFO, "Enabling for all worlds.");
-                            worlds.clear();
-                            worlds.addAll(Bukkit.getWorlds());
-                        }
-                        break;
-                }
-        save();
+        File configFile = new File(getDataFolder(), "config.yml"), snapshot = new File(getDataFolder(), "rules.dat");
+        saver = new ConfigSaver(this, configFile, snapshot);
+        GetByName.loadAliases(new File(getDataFolder(), "aliases.yml"), getLogger());
+        localRegions.set(LocalRegions.load(new File(getDataFolder(), "regions.yml"), getLogger()));
+        Regions.register(localRegions);
+        ConfigLoader config = null;
+        try {
+            byte[] hash = SnapshotFile.hash(Files.readAllBytes(configFile.toPath()), new File(getDataFolder(), "aliases.yml"));
+            config = SnapshotFile.read(snapshot, hash, getLogger());
+        } catch(IOException ex) {
+            getLogger().log(Level.WARNING, "Couldn''t read rules.dat: {0}", ex.getMessage());
+        }
+        boolean parsed = (config == null);
+        if(parsed)
+            config = new ConfigLoader(getConfig(), getLogger());
+        unloadedChunks = config.unloadedChunks;
+        chunkQuota = config.chunkQuota;
+        batchPlacement = config.batchPlacement;
+        try {
+            quotas = new QuotaFile(new File(getDataFolder(), "quota.dat"));
+        } catch(IOException ex) {
+            getLogger().log(Level.WARNING, "Couldn''t open quota.dat, quotas are disabled: {0}", ex.getMessage());
+        }
+        publish(new RuleSet(config.rules, config.worlds, loadedWorlds()));
+        metrics = new Metrics(this);
+        listen(config.metricsPort);
+        audit(config.auditHours);
+        if(parsed)
+            save();
     }
     
     /**
-     * Clears list of replaced blocks
+     * Writes pending changes, clears list of replaced blocks
      * - called when server is stopped/reloaded or plugin is disabled
      * @see org.bukkit.plugin.Plugin#onDisable()
      */ @Override
     public final void onDisable() {
-        rules.clear();
-        worlds.clear();
+        int dropped = placements.flush();
+        if(dropped > 0)
+            getLogger().log(Level.WARNING, "Dropped {0} queued blocks in regions of other threads", dropped);
+        Regions.unregister(localRegions);
+        if(metrics != null)
+            metrics.stop();
+        if(saver != null)
+            saver.flush();
+        publish(RuleSet.EMPTY);
+        AuditLog log = audit;
+        audit = null;
+        if(log != null)
+            log.stop();
+        QuotaFile file = quotas;
+        quotas = null;
+        if(file != null)
+            try {
+                file.close();
+            } catch(IOException ex) {
+                getLogger().log(Level.WARNING, "Couldn''t close quota.dat: {0}", ex.getMessage());
+            }
     }
     
     /**
@@ -139,10 +265,18 @@ public final class LavaWater extends JavaPlugin implements Listener {
                                                 "§f   Display this help.\n" +
                                                 "§7§o/" + label + " list [§npage§7§o]\n" +
                                                 "§f   List generator rules.\n" +
-                                                "§7§o/" + label + " add §ninput§7§o §noutput§7§o [nowater]\n" +
+                                                "§7§o/" + label + " add §ninput§7§o §noutput§7§o [nowater] [priority=§nN§7§o]\n" +
                                                 "§f   Add new rule and save changes to disk.\n" +
                                                 "§7§o/" + label + " remove §ninput-block§7§o | #§nid§7§o\n" +
-                                                "§f   Remove a rule and save changes to disk."
+                                                "§f   Remove a rule and save changes to disk.\n" +
+                                                "§7§o/" + label + " reload\n" +
+                                                "§f   Reload rules from disk.\n" +
+                                                "§7§o/" + label + " import|export §nfile§7§o\n" +
+                                                "§f   Load or write many rules at once.\n" +
+                                                "§7§o/" + label + " stats\n" +
+                                                "§f   Show rule hits and generator timing.\n" +
+                                                "§7§o/" + label + " audit §nradius§7§o [§nminutes§7§o]\n" +
+                                                "§f   Search log of generated blocks."
                                 );
                             else
                                 sender.sendMessage(
@@ -151,10 +285,18 @@ public final class LavaWater extends JavaPlugin implements Listener {
                                                 "   Display this help.\n" +
                                                 label + " list [<page>]\n" +
                                                 "   List all rules.\n" +
-                                                label + " add <input> <output> [nowater]\n" +
+                                                label + " add <input> <output> [nowater] [priority=N]\n" +
                                                 "   Add new rule and save changes to disk.\n" +
                                                 label + " remove <input-block> | #<id>\n" +
-                                                "   Remove a rule and save changes to disk."
+                                                "   Remove a rule and save changes to disk.\n" +
+                                                label + " reload\n" +
+                                                "   Reload rules from disk.\n" +
+                                                label + " import|export <file>\n" +
+                                                "   Load or write many rules at once.\n" +
+                                                label + " stats\n" +
+                                                "   Show rule hits and generator timing.\n" +
+                                                label + " audit <world> <x> <z> <radius> [<minutes>]\n" +
+                                                "   Search log of generated blocks."
                                 );
                         //</editor-fold>
                         return true;
@@ -197,7 +339,16 @@ public final class LavaWater extends JavaPlugin implements Listener {
                                                 "§7§o/" + label + " add §ninput-type§7§o §noutput-type§7§o nowater\n" +
                                                 "§f   Creates rule, which applies whenever lava floods a block of\n" +
                                                 "§f   type §ninput-type§f. A block of type §noutput-type§f is created.\n" +
-                                                "§f   Do not replace the §onowater§f keyword with anything else."
+                                                "§f   Do not replace the §onowater§f keyword with anything else.\n" +
+                                                "§f   §noutput-type§f may be a weighted list, picked at random:\n" +
+                                                "§f   §ocobblestone*70,coal_ore*20,iron_ore*10§f\n" +
+                                                "§f   Types may have a data value, e.g. §owool:14§f.\n" +
+                                                "§f   §owool:*§f or §owool§f matches any data value.\n" +
+                                                "§f   §ninput-type§f may be a group: §o*§f (any block), §oany_flower§f,\n" +
+                                                "§f   §oany_wool§f, §oany_ore§f, ... or a list in aliases.yml.\n" +
+                                                "§7§o/" + label + " add §ninput-type§7§o §noutput-type§7§o priority=§nN§7§o\n" +
+                                                "§f   Rules with higher priority are tried first, default is 0.\n" +
+                                                "§f   An input may have more rules, e.g. for different areas."
                                 );
                             else
                                 sender.sendMessage(
@@ -210,7 +361,16 @@ public final class LavaWater extends JavaPlugin implements Listener {
                                                 label + " add <input-type> <output-type> nowater\n" +
                                                 "   Creates rule, which applies whenever lava floods a block of\\n" +
                                                 "   type <input-type>. A block of type <output-type> is created.\n" +
-                                                "   Do not replace the \"nowater\" keyword with anything else."
+                                                "   Do not replace the \"nowater\" keyword with anything else.\n" +
+                                                "   <output-type> may be a weighted list, picked at random:\n" +
+                                                "   cobblestone*70,coal_ore*20,iron_ore*10\n" +
+                                                "   Types may have a data value, e.g. wool:14.\n" +
+                                                "   wool:* or wool matches any data value.\n" +
+                                                "   <input-type> may be a group: * (any block), any_flower,\n" +
+                                                "   any_wool, any_ore, ... or a list in aliases.yml.\n" +
+                                                label + " add <input-type> <output-type> priority=<N>\n" +
+                                                "   Rules with higher priority are tried first, default is 0.\n" +
+                                                "   An input may have more rules, e.g. for different areas."
                                 );
                         //</editor-fold>
                         return true;
@@ -238,6 +398,103 @@ public final class LavaWater extends JavaPlugin implements Listener {
                                 );
                         //</editor-fold>
                         return true;
+                    case "reload":
+                        //<editor-fold defaultstate="collapsed" desc="LavaWater help: reload ...">
+                            if(player)
+                                sender.sendMessage(
+                                        "§6§lLava§3§lWater §f§lhelp: §freload\n" +
+                                                "§f   Reload rules from disk.\n" +
+                                                "§7§o/" + label + " reload\n" +
+                                                "§f   Reads config.yml and regions.yml again. Rules which didn't change\n" +
+                                                "§f   keep their §nid§f, the others are replaced at once."
+                                );
+                            else
+                                sender.sendMessage(
+                                        "LavaWater help: reload\n" +
+                                                "   Reload rules from disk.\n" +
+                                                label + " reload\n" +
+                                                "   Reads config.yml and regions.yml again. Rules which didn't change\n" +
+                                                "   keep their <id>, the others are replaced at once."
+                                );
+                        //</editor-fold>
+                        return true;
+                    case "import":
+                    case "export":
+                        //<editor-fold defaultstate="collapsed" desc="LavaWater help: import, export ...">
+                            if(player)
+                                sender.sendMessage(
+                                        "§6§lLava§3§lWater §f§lhelp: §fimport, export\n" +
+                                                "§f   Load or write many rules at once.\n" +
+                                                "§7§o/" + label + " import §nfile§7§o\n" +
+                                                "§f   Adds all rules from §nfile§f in the exports folder and saves\n" +
+                                                "§f   changes to disk. Nothing is added if any line is invalid.\n" +
+                                                "§7§o/" + label + " export §nfile§7§o\n" +
+                                                "§f   Writes all rules to §nfile§f in the exports folder.\n" +
+                                                "§f   One rule per line: §oinput | output | needwater | quota=N | area...§f"
+                                );
+                            else
+                                sender.sendMessage(
+                                        "LavaWater help: import, export\n" +
+                                                "   Load or write many rules at once.\n" +
+                                                label + " import <file>\n" +
+                                                "   Adds all rules from <file> in the exports folder and saves\n" +
+                                                "   changes to disk. Nothing is added if any line is invalid.\n" +
+                                                label + " export <file>\n" +
+                                                "   Writes all rules to <file> in the exports folder.\n" +
+                                                "   One rule per line: input | output | needwater | quota=N | area..."
+                                );
+                        //</editor-fold>
+                        return true;
+                    case "stats":
+                        //<editor-fold defaultstate="collapsed" desc="LavaWater help: stats ...">
+                            if(player)
+                                sender.sendMessage(
+                                        "§6§lLava§3§lWater §f§lhelp: §fstats\n" +
+                                                "§f   Show rule hits and generator timing.\n" +
+                                                "§7§o/" + label + " stats\n" +
+                                                "§f   Lists rules which generated most blocks since start\n" +
+                                                "§f   and time spent on lava flows in each world.\n" +
+                                                "§f   Set §ometrics-port§f in config.yml to expose the same\n" +
+                                                "§f   data to Prometheus on 127.0.0.1."
+                                );
+                            else
+                                sender.sendMessage(
+                                        "LavaWater help: stats\n" +
+                                                "   Show rule hits and generator timing.\n" +
+                                                label + " stats\n" +
+                                                "   Lists rules which generated most blocks since start\n" +
+                                                "   and time spent on lava flows in each world.\n" +
+                                                "   Set metrics-port in config.yml to expose the same\n" +
+                                                "   data to Prometheus on 127.0.0.1."
+                                );
+                        //</editor-fold>
+                        return true;
+                    case "audit":
+                        //<editor-fold defaultstate="collapsed" desc="LavaWater help: audit ...">
+                            if(player)
+                                sender.sendMessage(
+                                        "§6§lLava§3§lWater §f§lhelp: §faudit\n" +
+                                                "§f   Search log of generated blocks.\n" +
+                                                "§7§o/" + label + " audit §nradius§7§o [§nminutes§7§o]\n" +
+                                                "§f   Counts blocks generated within §nradius§f blocks around you\n" +
+                                                "§f   in last §nminutes§f (default 60) and shows the latest ones.\n" +
+                                                "§7§o/" + label + " audit §nworld§7§o §nx§7§o §nz§7§o §nradius§7§o [§nminutes§7§o]\n" +
+                                                "§f   Same around any place.\n" +
+                                                "§f   Set §oaudit-hours§f in config.yml to enable the log\n" +
+                                                "§f   and keep it for that many hours."
+                                );
+                            else
+                                sender.sendMessage(
+                                        "LavaWater help: audit\n" +
+                                                "   Search log of generated blocks.\n" +
+                                                label + " audit <world> <x> <z> <radius> [<minutes>]\n" +
+                                                "   Counts blocks generated within <radius> blocks around\n" +
+                                                "   x, z in last <minutes> (default 60) and shows the latest ones.\n" +
+                                                "   Set audit-hours in config.yml to enable the log\n" +
+                                                "   and keep it for that many hours."
+                                );
+                        //</editor-fold>
+                        return true;
                     default:
                         sender.sendMessage((player ? "§cNo such page: " : "No such page: ") + args[1]);
                         return true;
@@ -245,6 +502,7 @@ public final class LavaWater extends JavaPlugin implements Listener {
             case "list":
                 if(sender.hasPermission("lavawater.command.list"))
                     try {
+                        List<Rule> rules = ruleSet.rules;
                         if(rules.isEmpty()) {
                             if(player)
                                 sender.sendMessage(
@@ -302,6 +560,7 @@ public final class LavaWater extends JavaPlugin implements Listener {
                             sender.sendMessage("----");
                         }
                     } catch(NumberFormatException ex) {
+                        List<Rule> rules = ruleSet.rules;
                         if(args[1].equals("*"))
                             if(player) {
                                 sender.sendMessage("§6§lLava§3§lWater §f§lrules:");
@@ -322,25 +581,38 @@ public final class LavaWater extends JavaPlugin implements Listener {
                 break;
             case "add":
                 if(sender.hasPermission("lavawater.command.add")) {
-                    boolean noWater = (args.length == 4);
-                    if(noWater && !args[3].equalsIgnoreCase("nowater")) {
-                        sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label + " add <input> <output> [nowater]");
+                    boolean noWater = false, valid = (args.length >= 3 && args.length <= 5);
+                    int priority = 0;
+                    for(int i = 3; valid && i < args.length; i++)
+                        if(args[i].equalsIgnoreCase("nowater") && !noWater)
+                            noWater = true;
+                        else if(args[i].toLowerCase().startsWith("priority="))
+                            try {
+                                priority = Integer.parseInt(args[i].substring(9));
+                            } catch(NumberFormatException ex) {
+                                valid = false;
+                            }
+                        else
+                            valid = false;
+                    if(!valid) {
+                        sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label + " add <input> <output> [nowater] [priority=N]");
                         break;
                     }
-                    if(noWater || args.length == 3)
-                        try {
-                            Rule rule = new Rule(
-                                    args[1],
-                                    args[2],
-                                    noWater ? "false" : "true",
-                                    Collections.EMPTY_LIST,
-                                    null
-                            );
-                            addRule(rule);
-                            sender.sendMessage(player ? "§aAdded: " + rule.coloredText : ("Added: " + rule.text));
-                        } catch(IllegalArgumentException ex) {
-                            sender.sendMessage((player ? "§cError: " : "Error: ") + ex.getMessage());
-                        }
+                    try {
+                        Rule rule = new Rule(
+                                args[1],
+                                args[2],
+                                noWater ? "false" : "true",
+                                Collections.EMPTY_LIST,
+                                0,
+                                priority,
+                                null
+                        );
+                        addRule(rule);
+                        sender.sendMessage(player ? "§aAdded: " + rule.coloredText : ("Added: " + rule.text));
+                    } catch(IllegalArgumentException ex) {
+                        sender.sendMessage((player ? "§cError: " : "Error: ") + ex.getMessage());
+                    }
                 }
                 else
                     sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
@@ -353,28 +625,22 @@ public final class LavaWater extends JavaPlugin implements Listener {
                     }
                     if(args[1].charAt(0) == '#')
                         try {
-                            int id = Integer.parseInt(args[1].substring(1));
-                            for(Rule rule : rules)
-                                if(rule.id == id) {
-                                    rules.remove(rule);
-                                    save();
-                                    sender.sendMessage(player ? "§aRemoved: " + rule.coloredText : "Removed: " + rule.text);
-                                    return true;
-                                }
+                            Rule rule = removeRule(Integer.parseInt(args[1].substring(1)));
+                            if(rule != null) {
+                                sender.sendMessage(player ? "§aRemoved: " + rule.coloredText : "Removed: " + rule.text);
+                                return true;
+                            }
                             sender.sendMessage((player ? "§cCouldn't find " : "Couldn't find ") + args[1]);
                         } catch(NumberFormatException ex) {
                             sender.sendMessage((player ? "§cCouldn't find " : "Couldn't find ") + args[1]);
                         }
                     else
                         try {
-                            Material material = GetByName.material(args[1]);
-                            for(Rule rule : rules)
-                                if(rule.input == material) {
-                                    rules.remove(rule);
-                                    save();
-                                    sender.sendMessage(player ? "§aRemoved: " + rule.coloredText : "Removed: " + rule.text);
-                                    return true;
-                                }
+                            Rule rule = removeRule(GetByName.materials(GetByName.type(args[1])), GetByName.data(args[1]));
+                            if(rule != null) {
+                                sender.sendMessage(player ? "§aRemoved: " + rule.coloredText : "Removed: " + rule.text);
+                                return true;
+                            }
                             sender.sendMessage((player ? "§cCouldn't find " : "Couldn't find ") + args[1]);
                         } catch(IllegalArgumentException ex) {
                             sender.sendMessage((player ? "§cCouldn't find " : "Couldn't find ") + args[1]);
@@ -382,37 +648,199 @@ public final class LavaWater extends JavaPlugin implements Listener {
                 } else
                     sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
                 break;
+            case "reload":
+                if(sender.hasPermission("lavawater.command.reload"))
+                    reload(sender, player);
+                else
+                    sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
+                break;
+            case "import":
+            case "export":
+                if(sender.hasPermission("lavawater.command." + args[0])) {
+                    if(args.length != 2) {
+                        sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label + " " + args[0] + " <file>");
+                        break;
+                    }
+                    File folder = new File(getDataFolder(), "exports"), file = new File(folder, args[1]);
+                    try {
+                        if(!file.getCanonicalPath().startsWith(folder.getCanonicalPath() + File.separator)) {
+                            sender.sendMessage((player ? "§cFile must be in exports folder: " : "File must be in exports folder: ") + args[1]);
+                            break;
+                        }
+                    } catch(IOException ex) {
+                        sender.sendMessage((player ? "§cError: " : "Error: ") + ex.getMessage());
+                        break;
+                    }
+                    if(args[0].equals("import"))
+                        importRules(sender, player, file);
+                    else
+                        exportRules(sender, player, file);
+                } else
+                    sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
+                break;
+            case "stats":
+                if(sender.hasPermission("lavawater.command.stats"))
+                    stats(sender, player);
+                else
+                    sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
+                break;
+            case "audit":
+                if(sender.hasPermission("lavawater.command.audit")) {
+                    if(audit == null) {
+                        sender.sendMessage(player ? "§cAudit log is disabled, set audit-hours in config.yml" : "Audit log is disabled, set audit-hours in config.yml");
+                        break;
+                    }
+                    boolean here = player && (args.length == 2 || args.length == 3);
+                    if(!here && args.length != 5 && args.length != 6) {
+                        sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label +
+                                (player ? " audit <radius> [minutes] or " : " ") + "audit <world> <x> <z> <radius> [minutes]");
+                        break;
+                    }
+                    try {
+                        UUID world;
+                        int x, z, first;
+                        if(here) {
+                            Location location = ((Player)sender).getLocation();
+                            world = location.getWorld().getUID();
+                            x = location.getBlockX();
+                            z = location.getBlockZ();
+                            first = 1;
+                        } else {
+                            world = GetByName.worldId(args[1]);
+                            if(world == null)
+                                throw new IllegalArgumentException("No such world: " + args[1]);
+                            x = Integer.parseInt(args[2]);
+                            z = Integer.parseInt(args[3]);
+                            first = 4;
+                        }
+                        int radius = Integer.parseInt(args[first]);
+                        int minutes = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : 60;
+                        if(radius < 0 || minutes <= 0)
+                            throw new IllegalArgumentException("Radius and minutes must be positive");
+                        searchAudit(sender, player, world, x, z, radius, minutes);
+                    } catch(IllegalArgumentException ex) {
+                        sender.sendMessage((player ? "§cError: " : "Error: ") + ex.getMessage());
+                    }
+                } else
+                    sender.sendMessage(player ? "§cYou don't have permission" : "You don't have permission");
+                break;
             default:
-                sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label + " help|list|add|remove [...]");
+                sender.sendMessage((player ? "§cUsage: /" : "Usage: ") + label + " help|list|add|remove|reload|import|export|stats|audit [...]");
         }
         return true;
     }
     
     /**
-     * Event handler - called when a liquid block spreads (flows from a source)
+     * Pseudo event handler
+     * - called when somebody presses Tab while typing any command attached to this plugin in plugin.yml
+     * - offers subcommands, block names and groups for add, Rule ids and inputs for remove
+     * @param sender Source of the command, only permitted subcommands are offered
+     * @param cmd Command which is typed - currently not used
+     * @param label Alias of the command which is typed - currently not used
+     * @param args Typed arguments, the last one is being completed
+     * @return Matching words, sorted
+     * @see PrefixIndex
+     */ @Override
+    public final List<String> onTabComplete(CommandSender sender, Command cmd, String label, String[] args) {
+        String last = (args.length == 0) ? "" : args[args.length - 1];
+        if(args.length <= 1) {
+            List<String> list = SUBCOMMANDS.complete(last);
+            for(Iterator<String> i = list.iterator(); i.hasNext(); ) {
+                String sub = i.next();
+                if(!sub.equals("help") && !sender.hasPermission("lavawater.command." + sub))
+                    i.remove();
+            }
+            return list;
+        }
+        switch(args[0].toLowerCase()) {
+            case "?":
+            case "help":
+                if(args.length == 2)
+                    return SUBCOMMANDS.complete(last);
+                break;
+            case "add":
+                if(!sender.hasPermission("lavawater.command.add"))
+                    break;
+                if(args.length == 2)
+                    return GetByName.completions().complete(last);
+                if(args.length == 3) {
+                    int comma = last.lastIndexOf(',');
+                    return GetByName.completions().complete(last.substring(0, comma + 1), last.substring(comma + 1));
+                }
+                if(args.length == 4 || args.length == 5) {
+                    ArrayList<String> list = new ArrayList(2);
+                    if("nowater".startsWith(last.toLowerCase()) && (args.length == 4 || !args[3].equalsIgnoreCase("nowater")))
+                        list.add("nowater");
+                    if("priority=".startsWith(last.toLowerCase()) && (args.length == 4 || !args[3].toLowerCase().startsWith("priority=")))
+                        list.add("priority=");
+                    return list;
+                }
+                break;
+            case "remove":
+                if(args.length == 2 && sender.hasPermission("lavawater.command.remove"))
+                    return ruleSet.completions().complete(last);
+                break;
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Event handler - called when a liquid block spreads (flows from a source), only while flowListener is registered
      * @param e Event object given by server.
-     */ @EventHandler
+     */
     public final void onBlockFromTo(BlockFromToEvent e) {
         if(e.isCancelled())
             return;
         Block toBlock = e.getToBlock();
-        if(!worlds.contains(toBlock.getWorld()))
+        RuleTable table = ruleSet.getTable(toBlock.getWorld().getUID());
+        if(table == null)
             return;
-        Material from = e.getBlock().getType(), to = toBlock.getType();
+        long start = System.nanoTime();
+        generate(e, toBlock, table);
+        table.latency.record(System.nanoTime() - start);
+    }
+    
+    /**
+     * Applies first matching Rule with quota left, used in onBlockFromTo()
+     * @param e Event object given by server.
+     * @param toBlock Flooded block
+     * @param table Rules of the World
+     */
+    private void generate(BlockFromToEvent e, Block toBlock, RuleTable table) {
+        Material from = e.getBlock().getType();
         if((from == LAVA || from == STATIONARY_LAVA)) {
-            Material
-                    west=toBlock.getRelative(WEST).getType(),
-                    east=toBlock.getRelative(EAST).getType(),
-                    north=toBlock.getRelative(NORTH).getType(),
-                    south=toBlock.getRelative(SOUTH).getType();
-            boolean haveWater = 
-                    west == WATER || west == STATIONARY_WATER ||
-                    east == WATER || east == STATIONARY_WATER ||
-                    north == WATER || north == STATIONARY_WATER ||
-                    south == WATER || south == STATIONARY_WATER;
-            for(Rule rule : rules)
-                if(to == rule.input && (haveWater || !rule.needWater) && rule.appliesTo(toBlock.getLocation())) {
-                    toBlock.setType(rule.output);
+            int type = toBlock.getTypeId(), data = toBlock.getData();
+            RuleTable.Entry[] candidates = table.get(type, data);
+            if(candidates == null)
+                return;
+            int x = toBlock.getX(), y = toBlock.getY(), z = toBlock.getZ();
+            if(batchPlacement && placements.isQueued(table.world, x, y, z)) {
+                e.setCancelled(true);
+                return;
+            }
+            ChunkPolicy water = null;
+            for(RuleTable.Entry entry : candidates)
+                if(entry.appliesTo(x, y, z)) {
+                    Rule rule = entry.rule;
+                    if(rule.needWater) {
+                        if(water == null)
+                            water = findWater(toBlock);
+                        if(water == ChunkPolicy.SKIP)
+                            return;
+                        if(water == ChunkPolicy.DRY)
+                            continue;
+                    }
+                    if(!takeQuota(table.world, toBlock, rule))
+                        continue;
+                    int i = rule.outputs.pick();
+                    if(batchPlacement)
+                        placements.add(table.world, toBlock, toBlock.getType(), rule.inputData, rule.outputs.get(i), rule.outputs.data(i));
+                    else
+                        toBlock.setTypeIdAndData(rule.outputs.get(i).getId(), rule.outputs.data(i), true);
+                    rule.hits.increment();
+                    AuditLog log = audit;
+                    if(log != null)
+                        log.record(table.world, x, y, z, rule.slotHash, type << 4 | data, rule.outputs.get(i).getId() << 4 | rule.outputs.data(i));
                     e.setCancelled(true);
                     return;
                 }
@@ -420,33 +848,465 @@ public final class LavaWater extends JavaPlugin implements Listener {
     }
     
     /**
-     * Adds a rule to list and deletes old ones with same input block
+     * Event handler - called when a World is loaded, compiles rules for the World
+     * @param e Event object given by server.
+     */ @EventHandler(priority = EventPriority.MONITOR)
+    public final synchronized void onWorldLoad(WorldLoadEvent e) {
+        publish(ruleSet.withWorld(e.getWorld().getUID()));
+    }
+    
+    /**
+     * Event handler - called when a World is unloaded, frees rules compiled for the World
+     * @param e Event object given by server.
+     */ @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public final synchronized void onWorldUnload(WorldUnloadEvent e) {
+        UUID world = e.getWorld().getUID();
+        publish(ruleSet.withoutWorld(world));
+        for(Rule rule : ruleSet.rules)
+            rule.unbind(world);
+        Regions.unbind(world);
+        Metrics.remove(world);
+    }
+    
+    /**
+     * Takes a token from the bucket of the chunk and of the Rule (by Rule.slotHash) in the chunk, only if both have one
+     * @param world UUID of the World
+     * @param block Flooded block
+     * @param rule Matching Rule
+     * @return true if the Rule may generate the block, false if a quota is exceeded
+     * @see QuotaFile
+     */
+    private boolean takeQuota(UUID world, Block block, Rule rule) {
+        int perChunk = chunkQuota;
+        QuotaFile file = quotas;
+        if(file == null || (perChunk == 0 && rule.quota == 0))
+            return true;
+        int x = block.getX() >> 4, z = block.getZ() >> 4;
+        long now = System.currentTimeMillis() * 1000;
+        long chunk = QuotaFile.key(world, x, z, 0);
+        long own = QuotaFile.key(world, x, z, rule.slotHash | 1);
+        return file.take(chunk, perChunk, own, rule.quota, now);
+    }
+    
+    /**
+     * Looks for water next to a block, stops at first water found.
+     * Neighbors in unloaded chunks are not loaded, unloadedChunks decides instead.
+     * @param block Flooded block
+     * @return WATER if there is water, DRY if there is none, otherwise result of unloadedChunks policy
+     */
+    private ChunkPolicy findWater(Block block) {
+        World world = block.getWorld();
+        boolean unloaded = false;
+        for(BlockFace face : SIDES) {
+            int x = block.getX() + face.getModX(), z = block.getZ() + face.getModZ();
+            if(!world.isChunkLoaded(x >> 4, z >> 4)) {
+                unloaded = true;
+                continue;
+            }
+            int type = world.getBlockTypeIdAt(x, block.getY(), z);
+            if(type == WATER_ID || type == STATIONARY_WATER_ID)
+                return ChunkPolicy.WATER;
+        }
+        return unloaded ? unloadedChunks : ChunkPolicy.DRY;
+    }
+    
+    /**
+     * Replaces the snapshot of Rules and registers or unregisters flowListener, call it on the main thread
+     * @param set New snapshot
+     * @return The new snapshot
+     */
+    private RuleSet publish(RuleSet set) {
+        ruleSet = set;
+        updateListener();
+        return set;
+    }
+    
+    /**
+     * Registers flowListener when some Rule can apply, unregisters it when none can.
+     * Locked, so two threads publishing at once can't both register it or leave it out of date.
+     */
+    private void updateListener() {
+        synchronized(flowListener) {
+            boolean active = isEnabled() && !ruleSet.isIdle();
+            if(active == listening)
+                return;
+            listening = active;
+            if(active)
+                getServer().getPluginManager().registerEvent(BlockFromToEvent.class, flowListener, EventPriority.NORMAL,
+                        flowExecutor, this, true);
+            else
+                BlockFromToEvent.getHandlerList().unregister(flowListener);
+        }
+    }
+    
+    /**
+     * Returns current snapshot of Rules
+     * @return Immutable RuleSet
+     */
+    public final RuleSet getRuleSet() {
+        return ruleSet;
+    }
+    
+    /**
+     * Returns current list of Rules
+     * @return Unmodifiable list of Rules in order of evaluation
+     */
+    public final List<Rule> getRules() {
+        return ruleSet.rules;
+    }
+    
+    /**
+     * Adds a rule to list and deletes an old one with same input block and Areas
      * @param rule New rule to add
      */
-    public final void addRule(Rule rule) {
-        for(Iterator<Rule> iterator = rules.iterator(); iterator.hasNext(); )
-            if(iterator.next().input == rule.input)
-                iterator.remove();
-        rules.add(rule);
+    public final synchronized void addRule(Rule rule) {
+        publish(ruleSet.withRule(rule));
         save();
     }
     
     /**
-     * Called after configuration change
+     * Removes a rule from list
+     * @param id Unique number of the Rule
+     * @return Removed Rule or null if there is none
      */
-    private void save() {
-        FileConfiguration config = getConfig();
-        for(String key : config.getKeys(false))
-            config.set(key, null);
+    public final synchronized Rule removeRule(int id) {
+        Rule rule = ruleSet.getRule(id);
+        if(rule != null) {
+            publish(ruleSet.withoutRule(rule));
+            save();
+        }
+        return rule;
+    }
+    
+    /**
+     * Removes first evaluated rule with given input block (or group) from list
+     * @param inputs Type of input block or group of types
+     * @param data Data value of input block, -1 for a Rule with any data value
+     * @return Removed Rule or null if there is none
+     */
+    public final synchronized Rule removeRule(MaterialSet inputs, int data) {
+        List<Rule> rules = ruleSet.getRules(Rule.inputKey(inputs, data));
+        if(rules.isEmpty())
+            return null;
+        Rule rule = rules.get(0);
+        publish(ruleSet.withoutRule(rule));
+        save();
+        return rule;
+    }
+    
+    /**
+     * Parses aliases.yml and config.yml off the main thread, then swaps changed rules in on the main thread
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     */
+    private void reload(final CommandSender sender, final boolean player) {
+        final File file = new File(getDataFolder(), "config.yml");
+        final ArrayList<UUID> loaded = loadedWorlds();
+        TaskScheduler.runAsync(this, new Runnable() {
+            @Override
+            public void run() {
+                GetByName.Aliases aliases = GetByName.readAliases(new File(getDataFolder(), "aliases.yml"), getLogger());
+                Map<String, Area[]> regions = LocalRegions.load(new File(getDataFolder(), "regions.yml"), getLogger());
+                ConfigLoader config = new ConfigLoader(YamlConfiguration.loadConfiguration(file), aliases, getLogger());
+                mergeReload(sender, player, config, regions, loaded);
+            }
+        });
+    }
+    
+    /**
+     * Merges reloaded rules with current ones off the main thread, then publishes them on the main thread.
+     * When the rules were changed in the meantime, the merge is repeated off the main thread with the new ones.
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     * @param config Parsed config.yml, with aliases it was parsed with
+     * @param regions Parsed regions.yml
+     * @param loaded UUIDs of loaded Worlds when the reload started
+     */
+    private void mergeReload(final CommandSender sender, final boolean player, final ConfigLoader config,
+            final Map<String, Area[]> regions, final List<UUID> loaded) {
+        final RuleSet base = ruleSet;
+        final RuleSet merged = base.merge(config.rules, config.worlds, loaded);
+        TaskScheduler.runGlobal(this, new Runnable() {
+            @Override
+            public void run() {
+                RuleSet next = swap(base, merged, config, regions);
+                if(next == null) {
+                    TaskScheduler.runAsync(LavaWater.this, new Runnable() {
+                        @Override
+                        public void run() {
+                            mergeReload(sender, player, config, regions, loaded);
+                        }
+                    });
+                    return;
+                }
+                Set<Rule> kept = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+                kept.addAll(base.rules);
+                kept.retainAll(next.rules);
+                sender.sendMessage((player ? "§aReloaded: " : "Reloaded: ") + next.rules.size() + " rules (" +
+                        kept.size() + " unchanged, " +
+                        (next.rules.size() - kept.size()) + " added, " +
+                        (base.rules.size() - kept.size()) + " removed)");
+            }
+        });
+    }
+    
+    /**
+     * Publishes reloaded rules with their aliases, regions and settings, used in mergeReload()
+     * @param base Snapshot the rules were merged with
+     * @param merged Merged snapshot
+     * @param config Parsed config.yml
+     * @param regions Parsed regions.yml
+     * @return Published snapshot, or null if the rules were changed since base was read and must be merged again
+     */
+    private synchronized RuleSet swap(RuleSet base, RuleSet merged, ConfigLoader config, Map<String, Area[]> regions) {
+        if(ruleSet != base)
+            return null;
+        GetByName.setAliases(config.aliases);
+        localRegions.set(regions);
+        unloadedChunks = config.unloadedChunks;
+        chunkQuota = config.chunkQuota;
+        batchPlacement = config.batchPlacement;
+        listen(config.metricsPort);
+        audit(config.auditHours);
+        return publish(merged.bind(loadedWorlds()));
+    }
+    
+    /**
+     * Reads Rules from a file off the main thread, then adds all of them at once on the main thread
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     * @param file File in the exports folder
+     * @see RuleFile
+     */
+    private void importRules(final CommandSender sender, final boolean player, final File file) {
+        TaskScheduler.runAsync(this, new Runnable() {
+            @Override
+            public void run() {
+                final RuleFile read;
+                try {
+                    read = new RuleFile(file);
+                } catch(IOException ex) {
+                    message(sender, (player ? "§cCouldn't read " : "Couldn't read ") + file.getName() + ": " + ex.getMessage());
+                    return;
+                }
+                if(read.invalid > 0) {
+                    StringBuilder builder = new StringBuilder(player ? "§cNothing imported, " : "Nothing imported, ");
+                    builder.append(read.invalid).append(" invalid lines:");
+                    for(String error : read.errors)
+                        builder.append('\n').append(player ? "§c   " : "   ").append(error);
+                    message(sender, builder.toString());
+                    return;
+                }
+                final RuleSet base = ruleSet;
+                final RuleSet merged = base.withRules(read.rules);
+                TaskScheduler.runGlobal(LavaWater.this, new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized(LavaWater.this) {
+                            publish((ruleSet == base ? merged : ruleSet.withRules(read.rules)).bind(loadedWorlds()));
+                            save();
+                        }
+                        StringBuilder builder = new StringBuilder(player ? "§aImported: " : "Imported: ").append(read.rules.size()).append(" rules");
+                        if(read.warned > 0)
+                            builder.append(", ").append(read.warned).append(" warnings:");
+                        for(String warning : read.warnings)
+                            builder.append('\n').append(player ? "§e   " : "   ").append(warning);
+                        sender.sendMessage(builder.toString());
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * Writes current Rules to a file off the main thread
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     * @param file File in the exports folder
+     * @see RuleFile
+     */
+    private void exportRules(final CommandSender sender, final boolean player, final File file) {
+        final List<Rule> rules = ruleSet.rules;
+        TaskScheduler.runAsync(this, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    file.getParentFile().mkdirs();
+                    RuleFile.write(file, rules);
+                    message(sender, (player ? "§aExported: " : "Exported: ") + rules.size() + " rules");
+                } catch(IOException ex) {
+                    message(sender, (player ? "§cCouldn't write " : "Couldn't write ") + file.getName() + ": " + ex.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Searches the audit log off the main thread, then sends the result
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     * @param world UUID of the World
+     * @param x X coordinate of the center
+     * @param z Z coordinate of the center
+     * @param radius Maximum distance from the center on either axis
+     * @param minutes How old records are searched
+     * @see AuditLog
+     */
+    private void searchAudit(final CommandSender sender, final boolean player, final UUID world, final int x, final int z,
+            final int radius, final int minutes) {
+        final File folder = new File(getDataFolder(), "audit");
+        TaskScheduler.runAsync(this, new Runnable() {
+            @Override
+            public void run() {
+                AuditLog.Search search;
+                try {
+                    search = new AuditLog.Search(folder, world, x, z, radius, System.currentTimeMillis() - minutes * 60000L, 8);
+                } catch(IOException ex) {
+                    message(sender, (player ? "§cCouldn't read audit log: " : "Couldn't read audit log: ") + ex.getMessage());
+                    return;
+                }
+                HashMap<Integer, Rule> rules = new HashMap();
+                for(Rule rule : ruleSet.rules)
+                    rules.put(rule.slotHash, rule);
+                SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss");
+                StringBuilder builder = new StringBuilder(player ? "§6§lLava§3§lWater §f§laudit:" : "LavaWater audit:");
+                builder.append(player ? "\n§f   " : "\n   ").append(search.count).append(" blocks generated within ")
+                        .append(radius).append(" blocks of ").append(x).append(", ").append(z)
+                        .append(" in last ").append(minutes).append(" minutes");
+                for(AuditLog.Entry entry : search.latest) {
+                    Rule rule = rules.get(entry.rule);
+                    builder.append('\n').append(player ? "§7   " : "   ").append(format.format(new Date(entry.time))).append(' ')
+                            .append(entry.x).append(", ").append(entry.y).append(", ").append(entry.z).append(": ")
+                            .append(blockName(entry.input)).append(" -> ").append(blockName(entry.output))
+                            .append(rule != null ? " (#" + rule.id + ')' : " (removed rule)");
+                }
+                message(sender, builder.toString());
+            }
+        });
+    }
+    
+    /**
+     * Returns name of a block, used in searchAudit()
+     * @param block Type id &lt;&lt; 4 | data value
+     * @return e.g. "STONE" or "WOOL:14"
+     */
+    private static String blockName(int block) {
+        Material material = Material.getMaterial(block >> 4);
+        String name = material == null ? Integer.toString(block >> 4) : material.name();
+        return (block & 15) == 0 ? name : name + ':' + (block & 15);
+    }
+    
+    /**
+     * Sends a message on the main thread
+     * @param sender Receiver of the message
+     * @param message Text of the message
+     */
+    private void message(final CommandSender sender, final String message) {
+        TaskScheduler.runGlobal(this, new Runnable() {
+            @Override
+            public void run() {
+                sender.sendMessage(message);
+            }
+        });
+    }
+    
+    /**
+     * Returns UUIDs of loaded Worlds
+     * @return List of UUIDs
+     */
+    private static ArrayList<UUID> loadedWorlds() {
+        List<World> list = Bukkit.getWorlds();
+        ArrayList<UUID> ids = new ArrayList(list.size());
+        for(World world : list)
+            ids.add(world.getUID());
+        return ids;
+    }
+    
+    /**
+     * Sends hit counters of the top Rules and flow latency in each World
+     * @param sender Source of the command, receives the result
+     * @param player true if sender is a player
+     * @see Metrics
+     */
+    private void stats(CommandSender sender, boolean player) {
+        ArrayList<Rule> rules = new ArrayList(ruleSet.rules);
+        final IdentityHashMap<Rule, Long> hits = new IdentityHashMap();
+        for(Rule rule : rules)
+            hits.put(rule, rule.hits.sum());
+        Collections.sort(rules, new Comparator<Rule>() {
+            @Override
+            public int compare(Rule a, Rule b) {
+                return hits.get(b).compareTo(hits.get(a));
+            }
+        });
+        StringBuilder builder = new StringBuilder(player ? "§6§lLava§3§lWater §f§lstats:" : "LavaWater stats:");
+        builder.append(player ? "\n§f   Top rules:" : "\n   Top rules:");
+        int shown = 0;
         for(Rule rule : rules) {
-            config.set("rules." + rule.inputString + ".result", rule.outputString);
-            config.set("rules." + rule.inputString + ".needwater", rule.needWater ? "true" : "false");
-            config.set("rules." + rule.inputString + ".area", rule.areasList());
+            long count = hits.get(rule);
+            if(count == 0 || shown++ == 8)
+                break;
+            builder.append('\n').append(player ? "§f   " : "   ").append(count).append("x ")
+                    .append(player ? rule.coloredText : rule.text);
         }
-        ArrayList<String> list = new ArrayList(worlds.size());
-        for(World world : worlds)
-            list.add(world.getUID().toString());
-        config.set("worlds", list);
-        saveConfig();
+        if(shown == 0)
+            builder.append(player ? "\n§7   none yet" : "\n   none yet");
+        builder.append(player ? "\n§f   Flow handling:" : "\n   Flow handling:");
+        if(!listening)
+            builder.append(player ? " §7idle, no active rules" : " idle, no active rules");
+        for(Map.Entry<UUID, Histogram> entry : Metrics.latencies().entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.count();
+            if(count == 0)
+                continue;
+            World world = getServer().getWorld(entry.getKey());
+            builder.append('\n').append(player ? "§f   " : "   ")
+                    .append(world == null ? entry.getKey().toString() : world.getName()).append(": ")
+                    .append(count).append(" flows, mean ").append(histogram.sum() / count / 1000)
+                    .append(" us, p50 < ").append(histogram.quantile(0.5) / 1000)
+                    .append(" us, p99 < ").append(histogram.quantile(0.99) / 1000).append(" us");
+        }
+        AuditLog log = audit;
+        if(log != null)
+            builder.append(player ? "\n§f   Audit log: " : "\n   Audit log: ").append(log.written.sum()).append(" written, ")
+                    .append(log.dropped.sum()).append(" dropped, ").append(log.pending()).append(" pending");
+        sender.sendMessage(builder.toString());
+    }
+    
+    /**
+     * Starts, restarts or stops the Prometheus endpoint, logs failure
+     * @param port Port on 127.0.0.1, 0 to stop
+     * @see Metrics
+     */
+    private void listen(int port) {
+        metricsPort = port;
+        try {
+            metrics.listen(port);
+        } catch(IOException ex) {
+            getLogger().log(Level.WARNING, "Couldn''t start metrics endpoint on port {0}: {1}", new Object[] {port, ex.getMessage()});
+        }
+    }
+    
+    /**
+     * Starts, restarts or stops the audit log
+     * @param hours Hours of log kept, 0 to stop
+     * @see AuditLog
+     */
+    private void audit(int hours) {
+        auditHours = hours;
+        AuditLog old = audit;
+        if(old != null && old.hours == hours)
+            return;
+        audit = hours > 0 ? new AuditLog(new File(getDataFolder(), "audit"), hours, getLogger()) : null;
+        if(old != null)
+            old.stop();
+    }
+    
+    /**
+     * Called after configuration change, schedules writing of config.yml
+     * @see ConfigSaver
+     */
+    private void save() {
+        saver.schedule();
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents the built-in RegionProvider "local", regions defined in regions.yml as lists of Areas:
+ * <pre>
+ * spawn:
+ *   - "world, -100, -100, 100, 100"
+ *   - "world, cylinder, 0, 300, 50"
+ * </pre>
+ * A block is in a region if it is within any of its Areas. Without a region plugin it stands in for one.
+ * @author LookyR
+ */
+public final class LocalRegions implements RegionProvider {
+    
+    /**
+     * Name used in Area declarations, e.g. "world, region, local, spawn"
+     */
+    public static final String NAME = "local";
+    
+    /**
+     * Areas by region id, replaced by set()
+     */
+    private volatile Map<String, Area[]> regions = Collections.emptyMap();
+    
+    /**
+     * Reads regions from a file, logs and skips invalid Areas; can be called off the main thread
+     * @param file YAML file, usually regions.yml in the plugin folder, doesn't need to exist
+     * @param logger Logger for warnings
+     * @return Areas by region id
+     */
+    public static Map<String, Area[]> load(File file, Logger logger) {
+        HashMap<String, Area[]> map = new HashMap();
+        if(!file.isFile())
+            return map;
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        for(String id : config.getKeys(false)) {
+            ArrayList<Area> list = new ArrayList();
+            for(String declaration : config.getStringList(id))
+                try {
+                    Area area = Area.parse(declaration);
+                    if(area.invert || area.getRegion() != null)
+                        throw new IllegalArgumentException("Regions can't contain inverted Areas or other regions: " + declaration);
+                    list.add(area);
+                } catch(IllegalArgumentException ex) {
+                    logger.log(Level.WARNING, "Region {0}: {1}", new Object[] {id, ex.getMessage()});
+                }
+            map.put(id, list.toArray(new Area[list.size()]));
+        }
+        return map;
+    }
+    
+    /**
+     * Replaces all regions and invalidates their cached membership, call it on the main thread
+     * @param regions Areas by region id, see load()
+     */
+    public final void set(Map<String, Area[]> regions) {
+        this.regions = regions;
+        Regions.invalidate(NAME);
+    }
+    
+    /**
+     * Returns name used in Area declarations
+     * @return "local"
+     */ @Override
+    public final String getName() {
+        return NAME;
+    }
+    
+    /**
+     * Checks a whole chunk section by bounds of the Areas
+     * @param world UUID of the World
+     * @param region Id of the region
+     * @param x Section X coordinate
+     * @param y Section Y coordinate
+     * @param z Section Z coordinate
+     * @return OUTSIDE, INSIDE or PARTIAL
+     */ @Override
+    public final int section(UUID world, String region, int x, int y, int z) {
+        Area[] areas = regions.get(region);
+        if(areas == null)
+            return OUTSIDE;
+        int result = OUTSIDE;
+        for(Area area : areas)
+            if(area.getWorld() == null || area.getWorld().equals(world)) {
+                if(area.covers(x << 4, y << 4, z << 4, (x << 4) + 15, (y << 4) + 15, (z << 4) + 15))
+                    return INSIDE;
+                if(area.intersects(x << 4, y << 4, z << 4, (x << 4) + 15, (y << 4) + 15, (z << 4) + 15))
+                    result = PARTIAL;
+            }
+        return result;
+    }
+    
+    /**
+     * Checks one block
+     * @param world UUID of the World
+     * @param region Id of the region
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if any Area of the region contains the block
+     */ @Override
+    public final boolean contains(UUID world, String region, int x, int y, int z) {
+        Area[] areas = regions.get(region);
+        if(areas != null)
+            for(Area area : areas)
+                if(area.contains(world, x, y, z))
+                    return true;
+        return false;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a map with primitive long keys (open addressing, linear probing), so lookups don't box.
+ * Not thread-safe, build it first and then only read it.
+ * @param <V> Type of values
+ * @author LookyR
+ */
+public final class LongMap<V> {
+    
+    /**
+     * Use get() or put()
+     */
+    private long[] keys;
+    
+    /**
+     * Use get() or put(), null means empty slot
+     */
+    private Object[] values;
+    
+    /**
+     * Number of entries
+     */
+    private int size;
+    
+    /**
+     * Creates new empty map
+     * @param expected Expected number of entries
+     */
+    public LongMap(int expected) {
+        int capacity = 8;
+        while(capacity < expected * 2)
+            capacity <<= 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+    
+    /**
+     * Packs chunk coordinates into one key
+     * @param x Chunk X coordinate
+     * @param z Chunk Z coordinate
+     * @return Packed key
+     */
+    public static long chunkKey(int x, int z) {
+        return ((long)x << 32) | (z & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Used in get(), put() and remove()
+     * @param key
+     * @return Hash of the key
+     */
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int)(key ^ (key >>> 32));
+    }
+    
+    /**
+     * Returns value for given key
+     * @param key Key
+     * @return Value or null if there is none
+     */
+    public final V get(long key) {
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if(value == null)
+                return null;
+            if(keys[i] == key)
+                return (V)value;
+        }
+    }
+    
+    /**
+     * Sets value for given key
+     * @param key Key
+     * @param value Value, not null
+     * @return Previous value or null
+     * @throws NullPointerException When value is null
+     */
+    public final V put(long key, V value) {
+        if(value == null)
+            throw new NullPointerException();
+        if(size * 2 >= keys.length)
+            grow();
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            Object old = values[i];
+            if(old == null) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return null;
+            }
+            if(keys[i] == key) {
+                values[i] = value;
+                return (V)old;
+            }
+        }
+    }
+    
+    /**
+     * Removes value for given key, shifts following entries back so no tombstone is left
+     * @param key Key
+     * @return Removed value or null
+     */
+    public final V remove(long key) {
+        int mask = keys.length - 1, hole = hash(key) & mask;
+        while(keys[hole] != key || values[hole] == null) {
+            if(values[hole] == null)
+                return null;
+            hole = (hole + 1) & mask;
+        }
+        Object old = values[hole];
+        for(int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask)
+            if(((j - (hash(keys[j]) & mask)) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        values[hole] = null;
+        size--;
+        return (V)old;
+    }
+    
+    /**
+     * Returns all values
+     * @return New list of values, in no particular order
+     */
+    public final List<V> values() {
+        ArrayList<V> list = new ArrayList(size);
+        for(Object value : values)
+            if(value != null)
+                list.add((V)value);
+        return list;
+    }
+    
+    /**
+     * Returns number of entries
+     * @return Number of entries
+     */
+    public final int size() {
+        return size;
+    }
+    
+    /**
+     * Doubles the capacity, used in put()
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++)
+            if(oldValues[i] != null)
+                put(oldKeys[i], (V)oldValues[i]);
+    }
+}
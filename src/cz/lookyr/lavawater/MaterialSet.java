@@ -0,0 +1,124 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.bukkit.Material;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents an immutable set of Materials, one bit per Material ordinal, so a check is a single bit test.
+ * Used for inputs of Rules: a single block ("stone"), a wildcard ("*") or a group ("any_flower", groups in aliases.yml).
+ * @author LookyR
+ */
+public final class MaterialSet {
+    
+    /**
+     * All Materials by ordinal
+     */
+    private static final Material[] MATERIALS = Material.values();
+    
+    /**
+     * Name of the set, Material name for a single block, lowercase group name otherwise
+     */
+    private final String name;
+    
+    /**
+     * Bits by Material ordinal
+     */
+    private final long[] bits = new long[(MATERIALS.length + 63) >> 6];
+    
+    /**
+     * Number of Materials
+     */
+    private final int size;
+    
+    /**
+     * Creates new set
+     * @param name Name of the set, e.g. "any_flower"
+     * @param materials Members, duplicates are ignored
+     * @throws IllegalArgumentException When materials is empty
+     * @throws NullPointerException When materials is null or contains a null value
+     */
+    public MaterialSet(String name, Collection<Material> materials) {
+        if(materials.isEmpty())
+            throw new IllegalArgumentException("Group " + name + " is empty");
+        this.name = name;
+        for(Material material : materials)
+            bits[material.ordinal() >> 6] |= 1L << material.ordinal();
+        int count = 0;
+        for(long word : bits)
+            count += Long.bitCount(word);
+        size = count;
+    }
+    
+    /**
+     * Creates set of one Material
+     * @param material The Material
+     * @return New set named after the Material
+     */
+    public static MaterialSet of(Material material) {
+        ArrayList<Material> list = new ArrayList(1);
+        list.add(material);
+        return new MaterialSet(material.name(), list);
+    }
+    
+    /**
+     * Checks, whether a Material is in the set
+     * @param material The Material
+     * @return true if it is a member
+     */
+    public final boolean contains(Material material) {
+        int ordinal = material.ordinal();
+        return (bits[ordinal >> 6] & 1L << ordinal) != 0;
+    }
+    
+    /**
+     * Returns number of Materials
+     * @return Number of members, at least 1
+     */
+    public final int size() {
+        return size;
+    }
+    
+    /**
+     * Returns Material with the lowest ordinal
+     * @return First member
+     */
+    public final Material first() {
+        for(int i = 0; ; i++)
+            if(bits[i] != 0)
+                return MATERIALS[i << 6 | Long.numberOfTrailingZeros(bits[i])];
+    }
+    
+    /**
+     * Returns all Materials
+     * @return New list of members in order of ordinals
+     */
+    public final List<Material> materials() {
+        ArrayList<Material> list = new ArrayList(size);
+        for(int i = 0; i < bits.length; i++)
+            for(long word = bits[i]; word != 0; word &= word - 1)
+                list.add(MATERIALS[i << 6 | Long.numberOfTrailingZeros(word)]);
+        return list;
+    }
+    
+    /**
+     * Returns name of the set
+     * @return e.g. "STONE" or "any_flower"
+     */ @Override
+    public final String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It keeps handler latency of each World and exposes it, together with Rule hit counters,
+ * in Prometheus text format on an optional HTTP endpoint bound to localhost.
+ * @author LookyR
+ */
+public final class Metrics implements HttpHandler {
+    
+    /**
+     * Use latency(), handler latency by UUID of the World
+     */
+    private static final ConcurrentHashMap<UUID, Histogram> LATENCY = new ConcurrentHashMap();
+    
+    /**
+     * Plugin to take Rules from
+     */
+    private final LavaWater plugin;
+    
+    /**
+     * Running server or null
+     */
+    private HttpServer server;
+    
+    /**
+     * Port of the running server, 0 if it is not running
+     */
+    private int port = 0;
+    
+    /**
+     * Creates new endpoint, not running yet
+     * @param plugin Plugin to take Rules from
+     */
+    public Metrics(LavaWater plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Returns latency histogram of a World, creates it on first use
+     * @param world UUID of the World
+     * @return Histogram, same for all RuleTables of the World
+     */
+    public static Histogram latency(UUID world) {
+        Histogram histogram = LATENCY.get(world);
+        if(histogram == null) {
+            histogram = new Histogram();
+            Histogram old = LATENCY.putIfAbsent(world, histogram);
+            if(old != null)
+                histogram = old;
+        }
+        return histogram;
+    }
+    
+    /**
+     * Forgets latency histogram of a World, call it when the World is unloaded
+     * @param world UUID of the World
+     */
+    public static void remove(UUID world) {
+        LATENCY.remove(world);
+    }
+    
+    /**
+     * Returns latency histograms of all Worlds
+     * @return Unmodifiable view, by UUID of the World
+     */
+    public static Map<UUID, Histogram> latencies() {
+        return Collections.unmodifiableMap(LATENCY);
+    }
+    
+    /**
+     * Starts, restarts or stops the endpoint
+     * @param port Port on 127.0.0.1, 0 to stop
+     * @throws IOException When the port can't be bound
+     */
+    public final synchronized void listen(int port) throws IOException {
+        if(port == this.port)
+            return;
+        stop();
+        if(port == 0)
+            return;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this);
+        server.start();
+        this.port = port;
+    }
+    
+    /**
+     * Stops the endpoint if it is running
+     */
+    public final synchronized void stop() {
+        if(server != null)
+            server.stop(0);
+        server = null;
+        port = 0;
+    }
+    
+    /**
+     * Serves /metrics, called by HttpServer
+     * @param exchange Request and response
+     * @throws IOException When the response can't be sent
+     */ @Override
+    public final void handle(HttpExchange exchange) throws IOException {
+        byte[] body = prometheus(plugin.getRuleSet()).getBytes(Charset.forName("UTF-8"));
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    /**
+     * Formats hit counters and latencies in Prometheus text format
+     * @param snapshot Current Rules
+     * @return Text of the exposition
+     */
+    public static String prometheus(RuleSet snapshot) {
+        StringBuilder b = new StringBuilder();
+        b.append("# HELP lavawater_rule_hits_total Blocks generated by a rule.\n");
+        b.append("# TYPE lavawater_rule_hits_total counter\n");
+        for(Rule rule : snapshot.rules)
+            b.append("lavawater_rule_hits_total{rule=\"").append(rule.id)
+                    .append("\",input=\"").append(escape(rule.inputs.toString()))
+                    .append("\",output=\"").append(escape(rule.outputs.toString()))
+                    .append("\"} ").append(rule.hits.sum()).append('\n');
+        b.append("# HELP lavawater_flow_seconds Time spent handling lava flows.\n");
+        b.append("# TYPE lavawater_flow_seconds histogram\n");
+        for(Map.Entry<UUID, Histogram> entry : LATENCY.entrySet()) {
+            String world = escape(entry.getKey().toString());
+            Histogram histogram = entry.getValue();
+            long cumulative = 0;
+            for(int i = 0; i < Histogram.BUCKETS; i++) {
+                cumulative += histogram.count(i);
+                b.append("lavawater_flow_seconds_bucket{world=\"").append(world).append("\",le=\"")
+                        .append(i == Histogram.BUCKETS - 1 ? "+Inf" : Double.toString(Histogram.bound(i) / 1e9))
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            b.append("lavawater_flow_seconds_sum{world=\"").append(world).append("\"} ")
+                    .append(histogram.sum() / 1e9).append('\n');
+            b.append("lavawater_flow_seconds_count{world=\"").append(world).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        return b.toString();
+    }
+    
+    /**
+     * Escapes a label value, used in prometheus()
+     * @param value Value, e.g. name of a group from aliases.yml
+     * @return Value with backslash, double quote and line feed escaped
+     */
+    private static String escape(String value) {
+        StringBuilder b = null;
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c != '\\' && c != '"' && c != '\n') {
+                if(b != null)
+                    b.append(c);
+                continue;
+            }
+            if(b == null)
+                b = new StringBuilder(value.length() + 8).append(value, 0, i);
+            b.append('\\').append(c == '\n' ? 'n' : c);
+        }
+        return b == null ? value : b.toString();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bukkit.Material;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents weighted outputs of a Rule, written as "cobblestone*70, coal_ore*20, iron_ore*10" (weight defaults to 1).
+ * Each output may have a data value, e.g. "wool:14*3, wool:4".
+ * Sampling uses a precomputed alias table (Vose's method): one column is picked uniformly,
+ * then either its own output or its alias, so each sample costs constant time and allocates nothing.
+ * @author LookyR
+ */
+public final class OutputTable {
+    
+    /**
+     * Scale of thresholds, probability 1 of a column
+     */
+    private static final int SCALE = 1 << 30;
+    
+    /**
+     * Outputs in order of declaration
+     */
+    private final Material[] materials;
+    
+    /**
+     * Data values of outputs in order of declaration
+     */
+    private final byte[] data;
+    
+    /**
+     * Weights in order of declaration, used in toString()
+     */
+    private final double[] weights;
+    
+    /**
+     * Probability of keeping own output of a column, scaled by SCALE
+     */
+    private final int[] threshold;
+    
+    /**
+     * Output used when a column doesn't keep its own one
+     */
+    private final int[] alias;
+    
+    /**
+     * Creates table of outputs
+     * @param materials Outputs, blocks
+     * @param data Data values of outputs, 0 - 15
+     * @param weights Weights of outputs, positive
+     * @throws IllegalArgumentException When arrays are empty or have different length, or a weight is not positive
+     * @throws NullPointerException When an array is null or contains a null value
+     */
+    public OutputTable(Material[] materials, byte[] data, double[] weights) {
+        int n = materials.length;
+        if(n == 0 || weights.length != n || data.length != n)
+            throw new IllegalArgumentException("Invalid output weights");
+        double total = 0;
+        for(int i = 0; i < n; i++) {
+            if(materials[i] == null)
+                throw new NullPointerException();
+            if(!(weights[i] > 0) || Double.isInfinite(weights[i]))
+                throw new IllegalArgumentException("Invalid weight of " + materials[i].name() + ": " + weights[i]);
+            total += weights[i];
+        }
+        this.materials = materials.clone();
+        this.data = data.clone();
+        this.weights = weights.clone();
+        threshold = new int[n];
+        alias = new int[n];
+        double[] p = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int s = 0, l = 0;
+        for(int i = 0; i < n; i++) {
+            p[i] = weights[i] * n / total;
+            if(p[i] < 1)
+                small[s++] = i;
+            else
+                large[l++] = i;
+        }
+        while(s > 0 && l > 0) {
+            int less = small[--s], more = large[--l];
+            threshold[less] = (int)(p[less] * SCALE);
+            alias[less] = more;
+            p[more] += p[less] - 1;
+            if(p[more] < 1)
+                small[s++] = more;
+            else
+                large[l++] = more;
+        }
+        while(l > 0)
+            threshold[large[--l]] = SCALE;
+        while(s > 0)
+            threshold[small[--s]] = SCALE;
+    }
+    
+    /**
+     * Creates table with one output
+     * @param material Output, block
+     * @throws NullPointerException When material is null
+     */
+    public OutputTable(Material material) {
+        this(new Material[] {material}, new byte[1], new double[] {1});
+    }
+    
+    /**
+     * Parses outputs, e.g. "cobblestone*70, coal_ore*20, iron_ore*10"
+     * @param string Comma-separated outputs, each optionally followed by ':' and data value, then '*' and weight
+     * @return New OutputTable
+     * @throws IllegalArgumentException When an output is not a block, or a data value or weight is invalid
+     */
+    public static OutputTable parse(String string) {
+        return parse(string, GetByName.aliases());
+    }
+    
+    /**
+     * Parses outputs, looking blocks up in given aliases instead of current ones
+     * @param string Comma-separated outputs, each optionally followed by ':' and data value, then '*' and weight
+     * @param names Aliases, e.g. read by a reload which is not published yet
+     * @return New OutputTable
+     * @throws IllegalArgumentException When an output is not a block, or a data value or weight is invalid
+     */
+    public static OutputTable parse(String string, GetByName.Aliases names) {
+        String[] split = string.split("\\s*,\\s*");
+        ArrayList<Material> list = new ArrayList(split.length);
+        byte[] data = new byte[split.length];
+        double[] weights = new double[split.length];
+        for(int i = 0; i < split.length; i++) {
+            int star = split[i].lastIndexOf('*');
+            weights[i] = 1;
+            if(star >= 0)
+                try {
+                    weights[i] = Double.parseDouble(split[i].substring(star + 1).trim());
+                } catch(NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid weight: " + split[i], ex);
+                }
+            String name = star >= 0 ? split[i].substring(0, star).trim() : split[i];
+            list.add(names.material(GetByName.type(name)));
+            data[i] = (byte)Math.max(0, GetByName.data(name));
+        }
+        return new OutputTable(list.toArray(new Material[list.size()]), data, weights);
+    }
+    
+    /**
+     * Picks an output according to the weights
+     * @return Position of the output, see get() and data()
+     */
+    public final int pick() {
+        int n = materials.length;
+        if(n == 1)
+            return 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        return random.nextInt(SCALE) < threshold[i] ? i : alias[i];
+    }
+    
+    /**
+     * Returns number of outputs
+     * @return Number of outputs
+     */
+    public final int size() {
+        return materials.length;
+    }
+    
+    /**
+     * Returns one output
+     * @param i Position in order of declaration
+     * @return Output block type
+     */
+    public final Material get(int i) {
+        return materials[i];
+    }
+    
+    /**
+     * Returns data value of one output
+     * @param i Position in order of declaration
+     * @return Data value, 0 - 15
+     */
+    public final byte data(int i) {
+        return data[i];
+    }
+    
+    /**
+     * Returns weight of one output
+     * @param i Position in order of declaration
+     * @return Weight as it was declared, not normalized
+     */
+    public final double weight(int i) {
+        return weights[i];
+    }
+    
+    /**
+     * Returns canonical form, only the Material name (and data value) if there is one output
+     * @return e.g. "COBBLESTONE*70,COAL_ORE*20,IRON_ORE*10"
+     */ @Override
+    public final String toString() {
+        if(materials.length == 1)
+            return materials[0].name() + (data[0] == 0 ? "" : ":" + data[0]);
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < materials.length; i++) {
+            if(i > 0)
+                builder.append(',');
+            builder.append(materials[i].name());
+            if(data[i] != 0)
+                builder.append(':').append(data[i]);
+            builder.append('*');
+            if(weights[i] == Math.rint(weights[i]) && weights[i] < Long.MAX_VALUE)
+                builder.append((long)weights[i]);
+            else
+                builder.append(weights[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents generated blocks waiting to be placed, grouped by chunk.
+ * The first block of a tick schedules run() for the next tick, which places all of them in one pass at its start
+ * without physics (except falling blocks, which need it to fall). A block is skipped if its type (or data value
+ * required by the Rule) changed meanwhile or its chunk was unloaded. Each block is queued at most once,
+ * check isQueued() before counting a hit.
+ * Thread-safe; on region-threaded servers each batch is scheduled on its own, on the thread owning its chunk.
+ * @author LookyR
+ */
+public final class PlacementQueue implements Runnable {
+    
+    /**
+     * Plugin which owns the task
+     */
+    private final Plugin plugin;
+    
+    /**
+     * Batches by UUID of the World, then by chunk key, guarded by this queue
+     */
+    private HashMap<UUID, LongMap<Batch>> worlds = new HashMap();
+    
+    /**
+     * Batches in order of creation, so run() doesn't need to iterate LongMap, empty if TaskScheduler.REGIONIZED
+     */
+    private ArrayList<Batch> batches = new ArrayList();
+    
+    /**
+     * Creates new empty queue
+     * @param plugin Plugin which owns the task
+     */
+    public PlacementQueue(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Queues a block, schedules run() if the queue was empty (or the batch of the chunk if TaskScheduler.REGIONIZED)
+     * @param world UUID of the World
+     * @param block Flooded block
+     * @param input Type the block must still have when placing
+     * @param inputData Data value the block must still have, -1 for any
+     * @param output New type of the block
+     * @param outputData New data value of the block
+     * @return false if the block was already queued, the queue isn't changed then
+     */
+    public final boolean add(UUID world, Block block, Material input, int inputData, Material output, byte outputData) {
+        int x = block.getX(), z = block.getZ();
+        int position = position(x, block.getY(), z, inputData);
+        Batch created = null;
+        synchronized(this) {
+            if(!TaskScheduler.REGIONIZED && batches.isEmpty())
+                TaskScheduler.runGlobal(plugin, this);
+            LongMap<Batch> chunks = worlds.get(world);
+            if(chunks == null)
+                worlds.put(world, chunks = new LongMap(16));
+            long key = LongMap.chunkKey(x >> 4, z >> 4);
+            Batch batch = chunks.get(key);
+            if(batch == null) {
+                chunks.put(key, batch = created = new Batch(world, x >> 4, z >> 4));
+                if(!TaskScheduler.REGIONIZED)
+                    batches.add(batch);
+            }
+            if(!batch.add(position, input.getId(), output.getId() << 4 | outputData))
+                return false;
+        }
+        if(created != null && TaskScheduler.REGIONIZED)
+            TaskScheduler.runAt(plugin, block.getWorld(), x >> 4, z >> 4, created);
+        return true;
+    }
+    
+    /**
+     * Checks whether a block waits to be placed
+     * @param world UUID of the World
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if add() would return false for the block
+     */
+    public final synchronized boolean isQueued(UUID world, int x, int y, int z) {
+        LongMap<Batch> chunks = worlds.get(world);
+        if(chunks == null)
+            return false;
+        Batch batch = chunks.get(LongMap.chunkKey(x >> 4, z >> 4));
+        return batch != null && batch.contains(position(x, y, z, -1));
+    }
+    
+    /**
+     * Places all queued blocks, called by scheduler or from onDisable(); does nothing if TaskScheduler.REGIONIZED
+     */ @Override
+    public final void run() {
+        ArrayList<Batch> list;
+        synchronized(this) {
+            list = batches;
+            if(list.isEmpty())
+                return;
+            worlds = new HashMap();
+            batches = new ArrayList();
+        }
+        Map<UUID, World> loaded = new HashMap();
+        for(Batch batch : list) {
+            World world = loaded.get(batch.world);
+            if(world == null && !loaded.containsKey(batch.world))
+                loaded.put(batch.world, world = Bukkit.getWorld(batch.world));
+            if(world != null && world.isChunkLoaded(batch.x, batch.z))
+                batch.place(world.getChunkAt(batch.x, batch.z));
+        }
+    }
+    
+    /**
+     * Places all queued blocks it can, call it from onDisable() instead of run().
+     * On region-threaded servers scheduled batches won't run anymore and chunks of other regions can't be accessed,
+     * so only batches in chunks owned by the current thread are placed.
+     * @return Number of blocks dropped because their chunks are owned by other threads
+     */
+    public final int flush() {
+        if(!TaskScheduler.REGIONIZED) {
+            run();
+            return 0;
+        }
+        HashMap<UUID, LongMap<Batch>> all;
+        synchronized(this) {
+            all = worlds;
+            worlds = new HashMap();
+        }
+        int dropped = 0;
+        for(Map.Entry<UUID, LongMap<Batch>> entry : all.entrySet()) {
+            World world = Bukkit.getWorld(entry.getKey());
+            if(world != null)
+                for(Batch batch : entry.getValue().values())
+                    if(!TaskScheduler.isOwned(world, batch.x, batch.z))
+                        dropped += batch.size;
+                    else if(world.isChunkLoaded(batch.x, batch.z))
+                        batch.place(world.getChunkAt(batch.x, batch.z));
+        }
+        return dropped;
+    }
+    
+    /**
+     * Packs position of a block in its chunk and required data value, used in add()
+     * @param x X coordinate of the block, only the lowest 4 bits are used
+     * @param y Y coordinate of the block, 0 - 255
+     * @param z Z coordinate of the block, only the lowest 4 bits are used
+     * @param inputData Data value the block must still have, -1 for any
+     * @return x | z &lt;&lt; 4 | y &lt;&lt; 8, optionally | 1 &lt;&lt; 16 | data &lt;&lt; 17
+     */
+    static int position(int x, int y, int z, int inputData) {
+        int position = (x & 15) | (z & 15) << 4 | (y & 255) << 8;
+        if(inputData >= 0)
+            position |= 1 << 16 | (inputData & 15) << 17;
+        return position;
+    }
+    
+    /**
+     * Unpacks X coordinate relative to the chunk
+     * @param position Result of position()
+     * @return 0 - 15
+     */
+    static int x(int position) {
+        return position & 15;
+    }
+    
+    /**
+     * Unpacks Y coordinate
+     * @param position Result of position()
+     * @return 0 - 255
+     */
+    static int y(int position) {
+        return position >>> 8 & 255;
+    }
+    
+    /**
+     * Unpacks Z coordinate relative to the chunk
+     * @param position Result of position()
+     * @return 0 - 15
+     */
+    static int z(int position) {
+        return position >>> 4 & 15;
+    }
+    
+    /**
+     * Unpacks required data value
+     * @param position Result of position()
+     * @return 0 - 15, -1 for any
+     */
+    static int data(int position) {
+        return (position & 1 << 16) == 0 ? -1 : position >>> 17 & 15;
+    }
+    
+    /**
+     * Inserts a position into an open-addressing set, used by Batch
+     * @param index The set, length is a power of 2, 0 marks free slot
+     * @param block x | z &lt;&lt; 4 | y &lt;&lt; 8, see position()
+     * @return false if the position is already there
+     */
+    static boolean insert(int[] index, int block) {
+        int mask = index.length - 1, i = slot(block) & mask;
+        for(; index[i] != 0; i = i + 1 & mask)
+            if(index[i] == block + 1)
+                return false;
+        index[i] = block + 1;
+        return true;
+    }
+    
+    /**
+     * Spreads a position over the open-addressing set
+     * @param block x | z &lt;&lt; 4 | y &lt;&lt; 8, see position()
+     * @return Mixed bits, mask them by length of the set
+     */
+    private static int slot(int block) {
+        int h = block * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+    
+    /**
+     * Checks whether a block needs physics after placing
+     * @param id Type ID of the block
+     * @return true for blocks which fall
+     */
+    private static boolean physics(int id) {
+        return id == Material.SAND.getId() || id == Material.GRAVEL.getId()
+                || id == Material.ANVIL.getId() || id == Material.DRAGON_EGG.getId();
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It represents blocks queued in one chunk, packed into longs: position in chunk and required input data value,
+     * input type ID, output type ID with data value.
+     */
+    private final class Batch implements Runnable {
+        
+        /**
+         * UUID of the World
+         */
+        final UUID world;
+        
+        /**
+         * Chunk coordinates
+         */
+        final int x, z;
+        
+        /**
+         * Packed blocks, use add()
+         */
+        private long[] blocks = new long[8];
+        
+        /**
+         * Number of blocks
+         */
+        private int size;
+        
+        /**
+         * Positions of the blocks without data value, plus 1, see insert(); twice as long as blocks
+         */
+        private int[] index = new int[16];
+        
+        /**
+         * Creates new empty batch
+         * @param world UUID of the World
+         * @param x Chunk X coordinate
+         * @param z Chunk Z coordinate
+         */
+        Batch(UUID world, int x, int z) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+        }
+        
+        /**
+         * Adds a block unless it is already there
+         * @param position Position in the chunk and required data value, see position()
+         * @param input Type ID the block must still have
+         * @param output New type ID &lt;&lt; 4 | data value
+         * @return false if a block at the same position was added before
+         */
+        final boolean add(int position, int input, int output) {
+            if(size == blocks.length) {
+                if(contains(position & 0xFFFF))
+                    return false;
+                blocks = Arrays.copyOf(blocks, size * 2);
+                index = new int[blocks.length * 2];
+                for(int i = 0; i < size; i++)
+                    insert(index, (int)blocks[i] & 0xFFFF);
+            }
+            if(!insert(index, position & 0xFFFF))
+                return false;
+            blocks[size++] = (long)position | (long)input << 32 | (long)output << 48;
+            return true;
+        }
+        
+        /**
+         * Checks whether a block at a position was added
+         * @param block x | z &lt;&lt; 4 | y &lt;&lt; 8, see position()
+         * @return true if it was
+         */
+        final boolean contains(int block) {
+            int mask = index.length - 1;
+            for(int i = slot(block) & mask; index[i] != 0; i = i + 1 & mask)
+                if(index[i] == block + 1)
+                    return true;
+            return false;
+        }
+        
+        /**
+         * Takes the batch out of the queue and places it, called by scheduler on the thread owning the chunk
+         * if TaskScheduler.REGIONIZED
+         */ @Override
+        public final void run() {
+            long key = LongMap.chunkKey(x, z);
+            synchronized(PlacementQueue.this) {
+                LongMap<Batch> chunks = worlds.get(world);
+                if(chunks == null || chunks.get(key) != this)
+                    return;
+                chunks.remove(key);
+            }
+            World loaded = Bukkit.getWorld(world);
+            if(loaded != null && loaded.isChunkLoaded(x, z))
+                place(loaded.getChunkAt(x, z));
+        }
+        
+        /**
+         * Places the blocks
+         * @param chunk The loaded chunk
+         */
+        final void place(Chunk chunk) {
+            for(int i = 0; i < size; i++) {
+                long packed = blocks[i];
+                int position = (int)packed, input = (int)(packed >>> 32) & 0xFFFF, output = (int)(packed >>> 48);
+                Block block = chunk.getBlock(x(position), y(position), z(position));
+                int data = data(position);
+                if(block.getTypeId() == input && (data < 0 || block.getData() == data))
+                    block.setTypeIdAndData(output >>> 4, (byte)(output & 15), physics(output >>> 4));
+            }
+        }
+    }
+}
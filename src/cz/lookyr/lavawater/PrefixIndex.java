@@ -0,0 +1,93 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a sorted array of words for tab completion, built once and then only read.
+ * Words with a prefix form one range of the array, found by two binary searches, so completion
+ * doesn't scan the words regardless of their number.
+ * @author LookyR
+ */
+public final class PrefixIndex {
+    
+    /**
+     * Unique lowercase words, sorted
+     */
+    private final String[] words;
+    
+    /**
+     * Creates new index
+     * @param words Words, case is ignored, duplicates are left out
+     * @throws NullPointerException When words is null or contains a null value
+     */
+    public PrefixIndex(Collection<String> words) {
+        TreeSet<String> set = new TreeSet();
+        for(String word : words)
+            set.add(word.toLowerCase());
+        this.words = set.toArray(new String[set.size()]);
+    }
+    
+    /**
+     * Returns words starting with a prefix
+     * @param prefix Typed part of the word, case is ignored
+     * @return New sorted list of matching words
+     */
+    public final List<String> complete(String prefix) {
+        prefix = prefix.toLowerCase();
+        int from = search(prefix), to = search(prefix + Character.MAX_VALUE);
+        return new ArrayList(Arrays.asList(words).subList(from, to));
+    }
+    
+    /**
+     * Returns words starting with a prefix, each preceded by a string
+     * @param before String put before each word, e.g. the already completed part of a list
+     * @param prefix Typed part of the word, case is ignored
+     * @return New sorted list of before + word
+     */
+    public final List<String> complete(String before, String prefix) {
+        List<String> list = complete(prefix);
+        for(int i = 0; i < list.size(); i++)
+            list.set(i, before + list.get(i));
+        return list;
+    }
+    
+    /**
+     * Returns number of words
+     * @return Number of unique words
+     */
+    public final int size() {
+        return words.length;
+    }
+    
+    /**
+     * Used in complete()
+     * @param key
+     * @return Position of the first word not smaller than key
+     */
+    private int search(String key) {
+        int low = 0, high = words.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(words[middle].compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents token buckets (blocks per minute) kept in a memory-mapped file, so they survive restarts.
+ * The file is a table of 16-byte slots: long key and long time, when the bucket is full again
+ * (in microseconds, 0 means empty slot). The table is split into STRIPES equal parts, the highest bits of a key
+ * choose the part, which is an open-addressing table (linear probing) with its own lock, so threads using
+ * different buckets rarely wait for each other. Growing the table locks all parts; full buckets are dropped then.
+ * Keys are 64-bit hashes, so two buckets may rarely share a slot. Thread-safe.
+ * @author LookyR
+ */
+public final class QuotaFile {
+    
+    /**
+     * First int of the file, "LWQ1"
+     */
+    private static final int MAGIC = 0x4C575131;
+    
+    /**
+     * Size of the header in bytes: magic, capacity, 8 reserved bytes
+     */
+    private static final int HEADER = 16;
+    
+    /**
+     * Size of a slot in bytes
+     */
+    private static final int SLOT = 16;
+    
+    /**
+     * Initial number of slots
+     */
+    private static final int INITIAL = 1024;
+    
+    /**
+     * One minute in microseconds, also the burst size of every bucket
+     */
+    private static final long MINUTE = 60000000L;
+    
+    /**
+     * Number of parts of the table, one for each value of the highest 6 bits of a key, see stripe()
+     */
+    private static final int STRIPES = 64;
+    
+    /**
+     * Open file
+     */
+    private final RandomAccessFile file;
+    
+    /**
+     * Locks of the parts of the table, all of them are held while buffer or capacity change
+     */
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    
+    /**
+     * Number of used slots in each part, guarded by its lock
+     */
+    private final int[] sizes = new int[STRIPES];
+    
+    /**
+     * Mapped content of the file, only absolute get and put are used, so threads can share it
+     */
+    private MappedByteBuffer buffer;
+    
+    /**
+     * Number of slots, power of 2
+     */
+    private int capacity;
+    
+    /**
+     * Opens or creates the file, starts empty if the file is not valid
+     * @param path File, usually quota.dat in the plugin folder
+     * @throws IOException When the file can't be opened or mapped
+     */
+    public QuotaFile(File path) throws IOException {
+        for(int i = 0; i < STRIPES; i++)
+            locks[i] = new ReentrantLock();
+        File dir = path.getAbsoluteFile().getParentFile();
+        if(!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Could not create " + dir);
+        file = new RandomAccessFile(path, "rw");
+        long length = file.length();
+        if(length >= HEADER) {
+            file.seek(0);
+            int cap = file.readInt() == MAGIC ? file.readInt() : 0;
+            if(cap >= INITIAL && Integer.bitCount(cap) == 1 && length == HEADER + (long)cap * SLOT) {
+                map(cap);
+                rehash(0);
+                return;
+            }
+        }
+        file.setLength(0);
+        map(INITIAL);
+    }
+    
+    /**
+     * Returns key of a bucket
+     * @param world UUID of the World
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @param salt 0 for the whole chunk, something else for parts of it (odd for one Rule, see Rule.slotHash)
+     * @return 64-bit hash
+     */
+    public static long key(UUID world, int chunkX, int chunkZ, int salt) {
+        long h = world.getMostSignificantBits() * 31 + world.getLeastSignificantBits();
+        h = mix(h ^ LongMap.chunkKey(chunkX, chunkZ));
+        return mix(h + salt);
+    }
+    
+    /**
+     * Used in key()
+     * @param h
+     * @return Mixed bits
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+    
+    /**
+     * Checks whether a bucket has a token, doesn't take it
+     * @param key Key of the bucket
+     * @param perMinute Size and refill rate of the bucket, 0 or less for unlimited
+     * @param now Current time in microseconds
+     * @return true if a block may be generated
+     */
+    public final boolean allows(long key, int perMinute, long now) {
+        if(perMinute <= 0)
+            return true;
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        try {
+            return has(key, perMinute, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Takes a token from a bucket, even if it is empty
+     * @param key Key of the bucket
+     * @param perMinute Size and refill rate of the bucket, 0 or less for unlimited
+     * @param now Current time in microseconds
+     */
+    public final void take(long key, int perMinute, long now) {
+        if(perMinute <= 0)
+            return;
+        int stripe = stripe(key);
+        ReentrantLock lock = locks[stripe];
+        while(true) {
+            lock.lock();
+            try {
+                if(!crowded(key)) {
+                    put(key, perMinute, now);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            grow(stripe, now);
+        }
+    }
+    
+    /**
+     * Takes a token from two buckets, only if both have one
+     * @param first Key of the first bucket
+     * @param firstPerMinute Size and refill rate of the first bucket, 0 or less for unlimited
+     * @param second Key of the second bucket
+     * @param secondPerMinute Size and refill rate of the second bucket, 0 or less for unlimited
+     * @param now Current time in microseconds
+     * @return true if tokens were taken, false if a bucket is empty
+     */
+    public final boolean take(long first, int firstPerMinute, long second, int secondPerMinute, long now) {
+        int a = stripe(first), b = stripe(second);
+        ReentrantLock low = locks[Math.min(a, b)], high = locks[Math.max(a, b)];
+        while(true) {
+            int full;
+            low.lock();
+            high.lock();
+            try {
+                if((firstPerMinute > 0 && !has(first, firstPerMinute, now))
+                        || (secondPerMinute > 0 && !has(second, secondPerMinute, now)))
+                    return false;
+                full = firstPerMinute > 0 && crowded(first) ? a : secondPerMinute > 0 && crowded(second) ? b : -1;
+                if(full < 0) {
+                    if(firstPerMinute > 0)
+                        put(first, firstPerMinute, now);
+                    if(secondPerMinute > 0)
+                        put(second, secondPerMinute, now);
+                    return true;
+                }
+            } finally {
+                high.unlock();
+                low.unlock();
+            }
+            grow(full, now);
+        }
+    }
+    
+    /**
+     * Writes changes to the disk, they are visible to the next start even without it unless the system crashes
+     */
+    public final void force() {
+        MappedByteBuffer mapped;
+        locks[0].lock();
+        try {
+            mapped = buffer;
+        } finally {
+            locks[0].unlock();
+        }
+        mapped.force();
+    }
+    
+    /**
+     * Writes changes and closes the file
+     * @throws IOException When closing fails
+     */
+    public final void close() throws IOException {
+        lockAll();
+        try {
+            buffer.force();
+            file.close();
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    /**
+     * Returns the part of the table a bucket belongs to
+     * @param key Key of the bucket
+     * @return Index of the part, 0 - 63
+     */
+    private static int stripe(long key) {
+        return (int)(key >>> 58);
+    }
+    
+    /**
+     * Checks whether a bucket has a token, the part of the bucket must be locked
+     * @param key Key of the bucket
+     * @param perMinute Size and refill rate of the bucket, more than 0
+     * @param now Current time in microseconds
+     * @return true if a block may be generated
+     */
+    private boolean has(long key, int perMinute, long now) {
+        long full = buffer.getLong(find(key) + 8);
+        return full - now <= MINUTE - MINUTE / perMinute;
+    }
+    
+    /**
+     * Checks whether a new bucket would fill the part of the table over a half, the part must be locked
+     * @param key Key of the bucket
+     * @return true if the bucket is not in the table yet and there are not 2 free slots for it, use grow() first
+     */
+    private boolean crowded(long key) {
+        return (sizes[stripe(key)] + 2) * 2 > capacity / STRIPES && buffer.getLong(find(key) + 8) == 0;
+    }
+    
+    /**
+     * Takes a token from a bucket, the part of the bucket must be locked and not crowded()
+     * @param key Key of the bucket
+     * @param perMinute Size and refill rate of the bucket, more than 0
+     * @param now Current time in microseconds
+     */
+    private void put(long key, int perMinute, long now) {
+        int slot = find(key);
+        long full = buffer.getLong(slot + 8);
+        if(full == 0) {
+            sizes[stripe(key)]++;
+            buffer.putLong(slot, key);
+        }
+        buffer.putLong(slot + 8, Math.max(full, now) + MINUTE / perMinute);
+    }
+    
+    /**
+     * Locks all parts of the table, in order, used to replace the table
+     */
+    private void lockAll() {
+        for(ReentrantLock lock : locks)
+            lock.lock();
+    }
+    
+    /**
+     * Unlocks all parts of the table
+     */
+    private void unlockAll() {
+        for(int i = STRIPES - 1; i >= 0; i--)
+            locks[i].unlock();
+    }
+    
+    /**
+     * Makes room in a part of the table, used in take() when no part is locked
+     * @param stripe The part
+     * @param now Current time in microseconds
+     */
+    private void grow(int stripe, long now) {
+        lockAll();
+        try {
+            if((sizes[stripe] + 2) * 2 > capacity / STRIPES)
+                rehash(now);
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    /**
+     * Looks for a bucket in its part of the table, which must be locked
+     * @param key
+     * @return Offset of the slot with the key or of the empty slot where it belongs
+     */
+    private int find(long key) {
+        int per = capacity / STRIPES, mask = per - 1, base = HEADER + stripe(key) * per * SLOT;
+        for(int i = (int)(key ^ (key >>> 32)) & mask; ; i = (i + 1) & mask) {
+            int offset = base + i * SLOT;
+            if(buffer.getLong(offset + 8) == 0 || buffer.getLong(offset) == key)
+                return offset;
+        }
+    }
+    
+    /**
+     * Maps the file with given number of slots, used in constructor and rehash()
+     * @param cap Number of slots
+     * @throws IOException When mapping fails
+     */
+    private void map(int cap) throws IOException {
+        file.setLength(HEADER + (long)cap * SLOT);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long)cap * SLOT);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, cap);
+        capacity = cap;
+    }
+    
+    /**
+     * Drops full buckets and grows the table if a part of it is still too full, all parts must be locked.
+     * Used in grow() and in constructor, where it also moves buckets of files from older versions into their parts.
+     * @param now Current time in microseconds, 0 keeps all buckets
+     */
+    private void rehash(long now) {
+        int live = 0;
+        for(int i = 0; i < capacity; i++)
+            if(buffer.getLong(HEADER + i * SLOT + 8) > now)
+                live++;
+        long[] keys = new long[live], times = new long[live];
+        int[] counts = new int[STRIPES];
+        int most = 0;
+        live = 0;
+        for(int i = 0; i < capacity; i++) {
+            int offset = HEADER + i * SLOT;
+            long full = buffer.getLong(offset + 8);
+            if(full > now) {
+                keys[live] = buffer.getLong(offset);
+                times[live] = full;
+                most = Math.max(most, ++counts[stripe(keys[live++])]);
+            }
+        }
+        int cap = capacity;
+        while(most * 4 > cap / STRIPES)
+            cap <<= 1;
+        try {
+            if(cap != capacity)
+                map(cap);
+        } catch(IOException ex) {
+            // keeps the table, drops buckets over a quarter of their part below
+        }
+        for(int i = 0; i < capacity; i++)
+            buffer.putLong(HEADER + i * SLOT + 8, 0);
+        Arrays.fill(sizes, 0);
+        for(int i = 0; i < live; i++) {
+            int stripe = stripe(keys[i]);
+            if(sizes[stripe] * 4 >= capacity / STRIPES)
+                continue;
+            sizes[stripe]++;
+            int slot = find(keys[i]);
+            buffer.putLong(slot, keys[i]);
+            buffer.putLong(slot + 8, times[i]);
+        }
+    }
+}
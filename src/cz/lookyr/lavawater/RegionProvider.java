@@ -0,0 +1,67 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.UUID;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a source of named regions (WorldGuard, Residence, PlotMe, ...), referenced in Areas as
+ * "world, region, provider, id". Register it with Regions.register() and call Regions.invalidate() when a region changes.
+ * Answers are cached per chunk section (16 x 16 x 16 blocks), so the methods are called rarely, on the thread
+ * handling the flooded block (the main thread, or a region thread on region-threaded servers).
+ * @author LookyR
+ */
+public interface RegionProvider {
+    
+    /**
+     * Result of section(), no block of the section is in the region
+     */
+    int OUTSIDE = 0;
+    
+    /**
+     * Result of section(), all blocks of the section are in the region
+     */
+    int INSIDE = 1;
+    
+    /**
+     * Result of section(), some blocks may be in the region, contains() is asked for each of them
+     */
+    int PARTIAL = 2;
+    
+    /**
+     * Returns name used in Area declarations
+     * @return Name, e.g. "worldguard", case insensitive
+     */
+    String getName();
+    
+    /**
+     * Checks a whole chunk section at once
+     * @param world UUID of the World
+     * @param region Id of the region
+     * @param x Section X coordinate (block X &gt;&gt; 4)
+     * @param y Section Y coordinate (block Y &gt;&gt; 4)
+     * @param z Section Z coordinate (block Z &gt;&gt; 4)
+     * @return OUTSIDE, INSIDE or PARTIAL (always safe)
+     */
+    int section(UUID world, String region, int x, int y, int z);
+    
+    /**
+     * Checks one block
+     * @param world UUID of the World
+     * @param region Id of the region
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if the block is in the region
+     */
+    boolean contains(UUID world, String region, int x, int y, int z);
+}
@@ -0,0 +1,225 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It keeps registered RegionProviders and cached membership of regions referenced by Areas.
+ * Each region caches one answer per chunk section, or per block for sections only partially inside,
+ * so a provider is asked once per section or block until the region is invalidated.
+ * Providers, regions and their caches may be used from any thread, each region locks its own cache.
+ * @author LookyR
+ */
+public final class Regions {
+    
+    /**
+     * Registered providers by lowercase name
+     */
+    private static final ConcurrentHashMap<String, RegionProvider> providers = new ConcurrentHashMap();
+    
+    /**
+     * Regions by "provider, id" (provider in lowercase), one instance per region
+     */
+    private static final ConcurrentHashMap<String, Region> regions = new ConcurrentHashMap();
+    
+    /**
+     * Static class
+     */
+    private Regions() {}
+    
+    /**
+     * Registers a provider, replaces the one with the same name
+     * @param provider Provider to register
+     */
+    public static void register(RegionProvider provider) {
+        providers.put(provider.getName().toLowerCase(), provider);
+        invalidate(provider.getName());
+    }
+    
+    /**
+     * Unregisters a provider, its regions don't contain anything until it is registered again
+     * @param provider Provider to unregister
+     */
+    public static void unregister(RegionProvider provider) {
+        providers.remove(provider.getName().toLowerCase(), provider);
+        invalidate(provider.getName());
+    }
+    
+    /**
+     * Returns a region, creates it on first use
+     * @param provider Name of the provider, doesn't have to be registered yet
+     * @param id Id of the region
+     * @return Region shared by all Areas referencing it
+     */
+    public static Region get(String provider, String id) {
+        Region region = new Region(provider.toLowerCase(), id);
+        Region old = regions.putIfAbsent(region.toString(), region);
+        return old == null ? region : old;
+    }
+    
+    /**
+     * Forgets cached membership of one region, call it on the main thread when the region changes
+     * @param provider Name of the provider
+     * @param id Id of the region
+     */
+    public static void invalidate(String provider, String id) {
+        Region region = regions.get(provider.toLowerCase() + ", " + id);
+        if(region != null)
+            region.clear();
+    }
+    
+    /**
+     * Forgets cached membership of all regions of a provider, call it on the main thread
+     * @param provider Name of the provider
+     */
+    public static void invalidate(String provider) {
+        for(Region region : regions.values())
+            if(region.provider.equalsIgnoreCase(provider))
+                region.clear();
+    }
+    
+    /**
+     * Forgets cached membership in a World, called when the World is unloaded
+     * @param world UUID of the World
+     */
+    public static void unbind(UUID world) {
+        for(Region region : regions.values())
+            region.unbind(world);
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It represents one region of a provider with its membership cache.
+     */
+    public static final class Region {
+        
+        /**
+         * Name of the provider, lowercase
+         */
+        public final String provider;
+        
+        /**
+         * Id of the region
+         */
+        public final String id;
+        
+        /**
+         * Cached sections by UUID of the World, then by section key, guarded by this Region
+         */
+        private HashMap<UUID, LongMap<Section>> worlds = new HashMap();
+        
+        /**
+         * Used in Regions.get()
+         * @param provider
+         * @param id
+         */
+        private Region(String provider, String id) {
+            this.provider = provider;
+            this.id = id;
+        }
+        
+        /**
+         * Checks, whether a block is in the region, asks the provider only if the answer is not cached
+         * @param world UUID of the World
+         * @param x X coordinate of the block
+         * @param y Y coordinate of the block
+         * @param z Z coordinate of the block
+         * @return true if the block is in the region, false if not or the provider is not registered
+         */
+        public final synchronized boolean contains(UUID world, int x, int y, int z) {
+            RegionProvider source = providers.get(provider);
+            if(source == null)
+                return false;
+            LongMap<Section> sections = worlds.get(world);
+            if(sections == null)
+                worlds.put(world, sections = new LongMap(64));
+            long key = (long)(x >> 4) << 42 ^ (long)((z >> 4) & 0x3FFFFF) << 20 ^ ((y >> 4) & 0xFFFFF);
+            Section section = sections.get(key);
+            if(section == null) {
+                switch(source.section(world, id, x >> 4, y >> 4, z >> 4)) {
+                    case RegionProvider.INSIDE:
+                        section = Section.INSIDE;
+                        break;
+                    case RegionProvider.OUTSIDE:
+                        section = Section.OUTSIDE;
+                        break;
+                    default:
+                        section = new Section();
+                }
+                sections.put(key, section);
+            }
+            if(section == Section.INSIDE || section == Section.OUTSIDE)
+                return section == Section.INSIDE;
+            int bit = (y & 15) << 8 | (z & 15) << 4 | (x & 15), i = bit >> 6;
+            long mask = 1L << bit;
+            if((section.known[i] & mask) == 0) {
+                section.known[i] |= mask;
+                if(source.contains(world, id, x, y, z))
+                    section.inside[i] |= mask;
+            }
+            return (section.inside[i] & mask) != 0;
+        }
+        
+        /**
+         * Forgets all cached answers
+         */
+        final synchronized void clear() {
+            worlds = new HashMap();
+        }
+        
+        /**
+         * Forgets all cached answers in a World
+         * @param world UUID of the World
+         */
+        final synchronized void unbind(UUID world) {
+            worlds.remove(world);
+        }
+        
+        /**
+         * Returns declaration used in Areas
+         * @return "provider, id"
+         */ @Override
+        public final String toString() {
+            return provider + ", " + id;
+        }
+    }
+    
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It represents cached answers for one chunk section, 4096 blocks.
+     */
+    private static final class Section {
+        
+        /**
+         * Shared section fully inside
+         */
+        static final Section INSIDE = new Section();
+        
+        /**
+         * Shared section fully outside
+         */
+        static final Section OUTSIDE = new Section();
+        
+        /**
+         * Blocks already asked for, one bit per block
+         */
+        final long[] known = new long[64];
+        
+        /**
+         * Blocks in the region, one bit per block
+         */
+        final long[] inside = new long[64];
+    }
+}
@@ -12,6 +12,9 @@ package cz.lookyr.lavawater;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,9 +30,9 @@ import org.bukkit.Location;
 public final class Rule {
     
     /**
-     * Used in constructors
+     * Used in constructors, atomic because Rules are also parsed off the main thread
      */
-    private static int counter = 0;
+    private static final AtomicInteger counter = new AtomicInteger();
     
     /**
      * Unique number of the Rule
@@ -37,15 +40,30 @@ public final class Rule {
     public final int id;
     
     /**
-     * Type of input block (sacrifice)
+     * Type of input block (sacrifice), the first one if there are more
      */
     public final Material input;
     
     /**
-     * Type of output block (result)
+     * All input blocks, a single one, a group or "*"
+     */
+    public final MaterialSet inputs;
+    
+    /**
+     * Data value of input block (e.g. color of wool), -1 for any
+     */
+    public final int inputData;
+    
+    /**
+     * Type of output block (result), the first one if there are more
      */
     public final Material output;
     
+    /**
+     * All output blocks with their weights, use outputs.pick() to pick one
+     */
+    public final OutputTable outputs;
+    
     /**
      * Type of input block (sacrifice), as it was given in command or config.yml
      */
@@ -61,11 +79,33 @@ public final class Rule {
      */
     public final boolean needWater;
     
+    /**
+     * Maximum number of blocks generated by this Rule per minute in one chunk, 0 for unlimited
+     * @see QuotaFile
+     */
+    public final int quota;
+    
+    /**
+     * Rules with higher priority are evaluated first, Rules with the same priority in order of adding
+     * @see RuleSet
+     */
+    public final int priority;
+    
     /**
      * Use appliesTo()
      */
     private final Area[] areas;
     
+    /**
+     * Use index(), Areas indexed for each World the Rule was compiled for
+     */
+    private final ConcurrentHashMap<UUID, AreaIndex> indexes = new ConcurrentHashMap();
+    
+    /**
+     * Number of blocks generated by this Rule
+     */
+    public final Counter hits = new Counter();
+    
     /**
      * String representation of this rule, colorless
      */
@@ -76,17 +116,25 @@ public final class Rule {
      */
     public final String coloredText;
     
+    /**
+     * Hash of getSlot(), the same for the same input and Areas after a restart or reload (unlike id),
+     * identifies the Rule in quota.dat and in the audit log
+     */
+    public final int slotHash;
+    
     /**
      * Creates new replacing rule
      * @param in The input block in the generator ("sacrifice"), e.g. Material.REDSTONE_WIRE
      * @param out The input block in the generator ("sacrifice"), e.g. Material.OBSIDIAN
      * @param nw Boolean (true, false, yes, no, t, f, ...) - true if water is needed for successfull generating
      * @param a Areas where this Rule can/cannot be applied, empty array for "everywhere"
-     * @throws IllegalArgumentException When either "in" or "out" are not blocks
+     * @param q Blocks per minute in one chunk, 0 for unlimited
+     * @param p Priority, higher is evaluated first
+     * @throws IllegalArgumentException When either "in" or "out" are not blocks or q is negative
      * @throws NullPointerException When either "in", "out" or "a" are null
      * @throws NullPointerException When a contains a null value
      */
-    public Rule(Material in, Material out, boolean nw, Area[] a) {
+    public Rule(Material in, Material out, boolean nw, Area[] a, int q, int p) {
         if(!in.isBlock())
             throw new IllegalArgumentException(in.name() + " is not a block!");
         if(!out.isBlock())
@@ -94,29 +142,63 @@ public final class Rule {
         for(Area area : a)
             if(area == null)
                 throw new NullPointerException();
-        id = counter++;
+        if(q < 0)
+            throw new IllegalArgumentException("Invalid quota: " + q);
+        id = counter.getAndIncrement();
         input = in;
+        inputs = MaterialSet.of(in);
+        inputData = -1;
         output = out;
+        outputs = new OutputTable(out);
         inputString = in.name();
         outputString = out.name();
         needWater = nw;
+        quota = q;
+        priority = p;
         areas = a;
-        text = getText(id, inputString, outputString, nw, a);
-        coloredText = getColoredText(id, inputString, outputString, nw, a);
+        text = getText(id, inputString, outputString, nw, q, p);
+        coloredText = getColoredText(id, inputString, outputString, nw, q, p);
+        slotHash = getSlot().hashCode();
     }
     
     /**
      * Creates new replacing rule
-     * @param in The input block in the generator ("sacrifice"), e.g. "redstone"
-     * @param out The input block in the generator ("sacrifice"), e.g. "obsidian"
+     * @param in The input block in the generator ("sacrifice"), e.g. "redstone" or "wool:14" (red wool only),
+     * or a group, e.g. "any_flower" or "*" (any block)
+     * @param out The output block, e.g. "obsidian" or "wool:14", or weighted outputs, e.g. "cobblestone*70, coal_ore*20, iron_ore*10"
      * @param nw Boolean (true, false, yes, no, t, f, ...) - true if water is needed for successfull generating
      * @param a Areas where this Rule can/cannot be applied
+     * @param q Blocks per minute in one chunk, 0 for unlimited
+     * @param p Priority, higher is evaluated first
      * @param logger Logger object or null
      * @throws EnumConstantNotPresentException When no Material matches "in" or "out" or it is not a block
+     * @throws IllegalArgumentException When q is negative
      * @throws NullPointerException When either "in", "out" or "a" are null
      * @throws NullPointerException When a contains a null value
      */
-    public Rule(String in, String out, String nw, List<String> a, Logger logger) {
+    public Rule(String in, String out, String nw, List<String> a, int q, int p, Logger logger) {
+        this(in, out, nw, a, q, p, GetByName.aliases(), logger);
+    }
+    
+    /**
+     * Creates new replacing rule, looking blocks and groups up in given aliases instead of current ones
+     * @param in The input block in the generator ("sacrifice"), e.g. "redstone" or "wool:14" (red wool only),
+     * or a group, e.g. "any_flower" or "*" (any block)
+     * @param out The output block, e.g. "obsidian" or "wool:14", or weighted outputs, e.g. "cobblestone*70, coal_ore*20, iron_ore*10"
+     * @param nw Boolean (true, false, yes, no, t, f, ...) - true if water is needed for successfull generating
+     * @param a Areas where this Rule can/cannot be applied
+     * @param q Blocks per minute in one chunk, 0 for unlimited
+     * @param p Priority, higher is evaluated first
+     * @param names Aliases and groups, e.g. read by a reload which is not published yet
+     * @param logger Logger object or null
+     * @throws EnumConstantNotPresentException When no Material matches "in" or "out" or it is not a block
+     * @throws IllegalArgumentException When q is negative
+     * @throws NullPointerException When either "in", "out", "a" or "names" are null
+     * @throws NullPointerException When a contains a null value
+     */
+    public Rule(String in, String out, String nw, List<String> a, int q, int p, GetByName.Aliases names, Logger logger) {
+        if(q < 0)
+            throw new IllegalArgumentException("Invalid quota: " + q);
         boolean b = true;
         if(nw != null)
             switch(nw.toLowerCase().trim()) {
@@ -129,61 +211,62 @@ public final class Rule {
                         logger.log(Level.WARNING, "Invalid boolean value \"{0}\" - using default (true)", nw);
             }
         ArrayList<Area> list = new ArrayList();
-        for(String area : a) {
-            boolean inv = false;
-            int i;
-            for(i = 0; i < area.length(); i++)
-                if(area.charAt(i) == '!' || area.charAt(i) == '^')
-                    inv = !inv;
-                else
-                    break;
-            String[] split = area.substring(i).split("\\s*,\\s*");
-            try {
-                switch(split.length) {
-                    case 1:
-                        list.add(new Area(
-                                GetByName.world(split[0]),
-                                inv
-                        ));
-                        break;
-                    case 5:
-                        list.add(new Area(
-                                GetByName.world(split[0]),
-                                Integer.parseInt(split[1]),
-                                Integer.parseInt(split[2]),
-                                Integer.parseInt(split[3]),
-                                Integer.parseInt(split[4]),
-                                inv
-                        ));
-                        break;
-                    case 7:
-                        list.add(new Area(
-                                GetByName.world(split[0]),
-                                Integer.parseInt(split[1]),
-                                Integer.parseInt(split[2]),
-                                Integer.parseInt(split[3]),
-                                Integer.parseInt(split[4]),
-                                Integer.parseInt(split[5]),
-                                Integer.parseInt(split[6]),
-                                inv
-                        ));
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Invalid area declaration: " + area);
-                }
-            } catch(NumberFormatException ex) {
-                throw new IllegalArgumentException("Invalid area declaration: " + area, ex);
-            }
-        }
-        id = counter++;
-        input = GetByName.material(in);
-        output = GetByName.material(out);
+        for(String area : a)
+            list.add(Area.parse(area));
+        id = counter.getAndIncrement();
+        inputs = names.materials(GetByName.type(in));
+        input = inputs.first();
+        inputData = GetByName.data(in);
+        outputs = OutputTable.parse(out, names);
+        output = outputs.get(0);
         inputString = in;
         outputString = out;
         needWater = b;
+        quota = q;
+        priority = p;
         areas = list.toArray(new Area[0]);
-        text = getText(id, inputString, outputString, b, areas);
-        coloredText = getColoredText(id, inputString, outputString, b, areas);
+        text = getText(id, inputString, outputString, b, q, p);
+        coloredText = getColoredText(id, inputString, outputString, b, q, p);
+        slotHash = getSlot().hashCode();
+    }
+    
+    /**
+     * Creates new replacing rule from resolved blocks, used by SnapshotFile so nothing is looked up by name
+     * @param inputs Input block or group
+     * @param inputData Data value of input block, -1 for any
+     * @param outputs Output blocks with their weights
+     * @param in Input as it was given in command or config.yml
+     * @param out Output as it was given in command or config.yml
+     * @param nw true if water is needed for successfull generating
+     * @param a Areas where this Rule can/cannot be applied, empty array for "everywhere"
+     * @param q Blocks per minute in one chunk, 0 for unlimited
+     * @param p Priority, higher is evaluated first
+     * @throws IllegalArgumentException When q is negative
+     * @throws NullPointerException When any of the objects is null
+     */
+    Rule(MaterialSet inputs, int inputData, OutputTable outputs, String in, String out, boolean nw, Area[] a, int q, int p) {
+        if(in == null || out == null)
+            throw new NullPointerException();
+        for(Area area : a)
+            if(area == null)
+                throw new NullPointerException();
+        if(q < 0)
+            throw new IllegalArgumentException("Invalid quota: " + q);
+        id = counter.getAndIncrement();
+        this.inputs = inputs;
+        input = inputs.first();
+        this.inputData = inputData;
+        this.outputs = outputs;
+        output = outputs.get(0);
+        inputString = in;
+        outputString = out;
+        needWater = nw;
+        quota = q;
+        priority = p;
+        areas = a;
+        text = getText(id, inputString, outputString, nw, q, p);
+        coloredText = getColoredText(id, inputString, outputString, nw, q, p);
+        slotHash = getSlot().hashCode();
     }
     
     /**
@@ -192,17 +275,108 @@ public final class Rule {
      * @return true if this rule applies to the location
      */
     public final boolean appliesTo(Location location) {
+        return appliesTo(location.getWorld().getUID(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+    
+    /**
+     * Checks, whether this rule applies to a block
+     * @param world UUID of the World of the block
+     * @param x X coordinate of the block
+     * @param y Y coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if this rule applies to the block
+     */
+    public final boolean appliesTo(UUID world, int x, int y, int z) {
         if(areas.length == 0)
             return true;
-        boolean applies = areas[0].invert;
-        for(Area area : areas)
-            if(area.invert) {
-                if(area.contains(location))
-                    applies = false;
-            } else
-                if(area.contains(location))
-                    applies = true;
-        return applies;
+        return index(world).appliesTo(x, y, z);
+    }
+    
+    /**
+     * Returns Areas of this Rule indexed for a World, builds the index on first use
+     * @param world UUID of the World
+     * @return AreaIndex or null if this Rule has no Areas (applies everywhere)
+     */
+    public final AreaIndex index(UUID world) {
+        if(areas.length == 0)
+            return null;
+        AreaIndex index = indexes.get(world);
+        if(index == null) {
+            index = new AreaIndex(areas, world);
+            AreaIndex old = indexes.putIfAbsent(world, index);
+            if(old != null)
+                index = old;
+        }
+        return index;
+    }
+    
+    /**
+     * Forgets index of a World, called when the World is unloaded
+     * @param world UUID of the World
+     */
+    public final void unbind(UUID world) {
+        indexes.remove(world);
+    }
+    
+    /**
+     * Returns definition of this Rule without its id, used to match Rules on reload
+     * @return Input, output, water condition, quota, priority and Areas as String
+     */
+    public final String getKey() {
+        return inputKey() + ' ' + outputs + ' ' + needWater + ' ' + quota + ' ' + priority + ' ' + areasList();
+    }
+    
+    /**
+     * Returns input and Areas of this Rule, a new Rule replaces the one with the same slot
+     * @return Input and Areas as String
+     */
+    public final String getSlot() {
+        return inputKey() + ' ' + areasList();
+    }
+    
+    /**
+     * Checks, whether another Rule has the same input block (or group) and data value
+     * @param rule Other Rule
+     * @return true if the Rules have the same input
+     */
+    public final boolean sameInput(Rule rule) {
+        return inputKey().equals(rule.inputKey());
+    }
+    
+    /**
+     * Returns input block (or group) and data value, used to find Rules by input
+     * @return e.g. "STONE", "WOOL:14" or "any_flower"
+     */
+    public final String inputKey() {
+        return inputKey(inputs, inputData);
+    }
+    
+    /**
+     * Returns input block (or group) and data value in the form of inputKey()
+     * @param inputs Input block or group
+     * @param data Data value, -1 for any
+     * @return e.g. "STONE", "WOOL:14" or "any_flower"
+     */
+    public static String inputKey(MaterialSet inputs, int data) {
+        return data < 0 ? inputs.toString() : inputs.toString() + ':' + data;
+    }
+    
+    /**
+     * Checks, whether this Rule accepts a block
+     * @param type Type of the block
+     * @param data Data value of the block
+     * @return true if the block is one of the inputs and has the data value
+     */
+    public final boolean accepts(Material type, int data) {
+        return inputs.contains(type) && (inputData < 0 || inputData == data);
+    }
+    
+    /**
+     * Returns Areas of this Rule, used by SnapshotFile
+     * @return The array itself, must not be modified
+     */
+    final Area[] areas() {
+        return areas;
     }
     
     /**
@@ -222,11 +396,13 @@ public final class Rule {
      * @param in
      * @param out
      * @param nw
-     * @param a
+     * @param q
+     * @param p
      * @return String representation saved to the 'text' field
      */
-    private static String getText(int id, String in, String out, boolean nw, Area[] a) {
-        return (nw ? " Lava + water + " : " Lava + ") + in + " = " + out + " (#" + id + ")";
+    private static String getText(int id, String in, String out, boolean nw, int q, int p) {
+        return (nw ? " Lava + water + " : " Lava + ") + in + " = " + out + (q > 0 ? ", " + q + "/min" : "")
+                + (p != 0 ? ", priority " + p : "") + " (#" + id + ")";
     }
     
     /**
@@ -235,10 +411,12 @@ public final class Rule {
      * @param in
      * @param out
      * @param nw
-     * @param a
+     * @param q
+     * @param p
      * @return String representation saved to the 'coloredText' field
      */
-    private static String getColoredText(int id, String in, String out, boolean nw, Area[] a) {
-        return (nw ? "§e Lava §f+ §bwater §f+ §7" : "§e Lava §f+ §7") + in + " §f= §7" + out + " §f(#" + id + ")";
+    private static String getColoredText(int id, String in, String out, boolean nw, int q, int p) {
+        return (nw ? "§e Lava §f+ §bwater §f+ §7" : "§e Lava §f+ §7") + in + " §f= §7" + out + (q > 0 ? "§f, " + q + "/min" : "")
+                + (p != 0 ? "§f, priority " + p : "") + " §f(#" + id + ")";
     }
 }
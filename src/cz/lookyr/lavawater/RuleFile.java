@@ -0,0 +1,207 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It reads and writes Rules in a line-oriented text format, one Rule per line:
+ * <pre>
+ * # comment
+ * input | output
+ * input | output | needwater
+ * input | output | needwater | area | area ...
+ * input | output | needwater | quota=60 | area ...
+ * input | output | needwater | priority=10 | quota=60 | area ...
+ * input | output | quota=60
+ * </pre>
+ * Options quota=N and priority=N may follow needwater in any order; needwater may be left out before them.
+ * Areas need needwater or an option before them.
+ * Files are read line by line, but all Rules are kept in rules until the caller adds them at once,
+ * because nothing is imported if any line is invalid. Use it off the main thread.
+ * @author LookyR
+ */
+public final class RuleFile {
+    
+    /**
+     * Maximum number of errors kept in errors
+     */
+    public static final int MAX_ERRORS = 5;
+    
+    /**
+     * Rules read from the file, in order
+     */
+    public final ArrayList<Rule> rules = new ArrayList();
+    
+    /**
+     * First MAX_ERRORS errors, with line numbers
+     */
+    public final ArrayList<String> errors = new ArrayList();
+    
+    /**
+     * Number of invalid lines
+     */
+    public int invalid = 0;
+    
+    /**
+     * First MAX_ERRORS warnings (e.g. invalid needwater, replaced by default), with line numbers
+     */
+    public final ArrayList<String> warnings = new ArrayList();
+    
+    /**
+     * Number of warnings
+     */
+    public int warned = 0;
+    
+    /**
+     * Line being parsed, used in warnings
+     */
+    private int number = 0;
+    
+    /**
+     * Reads and validates Rules from a file
+     * @param file File to read
+     * @throws IOException When the file can't be read
+     */
+    public RuleFile(File file) throws IOException {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if(warned++ < MAX_ERRORS)
+                    warnings.add("Line " + number + ": " + new SimpleFormatter().formatMessage(record));
+            }
+            
+            @Override
+            public void flush() {}
+            
+            @Override
+            public void close() {}
+        });
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")))) {
+            for(String line; (line = reader.readLine()) != null; ) {
+                number++;
+                line = line.trim();
+                if(line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+                try {
+                    rules.add(parse(line, logger));
+                } catch(IllegalArgumentException ex) {
+                    if(invalid++ < MAX_ERRORS)
+                        errors.add("Line " + number + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Parses one line
+     * @param line Line without comments
+     * @param logger Logger for warnings or null
+     * @return New Rule
+     * @throws IllegalArgumentException When the line is not a valid Rule
+     */
+    public static Rule parse(String line, Logger logger) {
+        String[] split = line.split("\\s*\\|\\s*");
+        if(split.length < 2)
+            throw new IllegalArgumentException("Expected: input | output [| needwater] [| quota=N] [| priority=N] [| area]...");
+        boolean needWater = split.length > 2 && !isOption(split[2]);
+        int quota = 0, priority = 0, first = needWater ? 3 : 2;
+        for(; first < split.length; first++)
+            try {
+                if(!isOption(split[first]))
+                    break;
+                else if(split[first].startsWith("quota="))
+                    quota = Integer.parseInt(split[first].substring(6));
+                else
+                    priority = Integer.parseInt(split[first].substring(9));
+            } catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid option: " + split[first], ex);
+            }
+        return new Rule(
+                split[0],
+                split[1],
+                needWater ? split[2] : null,
+                split.length > first ? Arrays.asList(split).subList(first, split.length) : new ArrayList<String>(0),
+                quota,
+                priority,
+                logger
+        );
+    }
+    
+    /**
+     * Used in parse()
+     * @param field One field of a line
+     * @return true if it is quota=N or priority=N
+     */
+    private static boolean isOption(String field) {
+        return field.startsWith("quota=") || field.startsWith("priority=");
+    }
+    
+    /**
+     * Returns one line representing a Rule
+     * @param rule Rule to format
+     * @return Line readable by parse()
+     */
+    public static String format(Rule rule) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(rule.inputString).append(" | ").append(rule.outputString).append(" | ").append(rule.needWater);
+        if(rule.quota != 0)
+            builder.append(" | quota=").append(rule.quota);
+        if(rule.priority != 0)
+            builder.append(" | priority=").append(rule.priority);
+        for(String area : rule.areasList())
+            builder.append(" | ").append(area);
+        return builder.toString();
+    }
+    
+    /**
+     * Writes Rules to a file, through a temporary file
+     * @param file Target file
+     * @param rules Rules to write
+     * @throws IOException When writing fails
+     */
+    public static void write(File file, List<Rule> rules) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try(BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), Charset.forName("UTF-8")))) {
+                writer.write("# LavaWater rules: input | output | needwater | quota=N | priority=N | area...");
+                writer.newLine();
+                for(Rule rule : rules) {
+                    writer.write(format(rule));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+}
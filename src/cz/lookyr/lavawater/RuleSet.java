@@ -0,0 +1,374 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents an immutable snapshot of all Rules and the Worlds they are compiled for.
+ * Rules are kept in order of evaluation (higher priority first, then in order of adding) and indexed by id,
+ * by input and by slot (input and Areas), so lookups don't scan the list. An input may have many Rules,
+ * e.g. for different Areas; a new Rule replaces only the one with the same slot.
+ * Every change creates a new RuleSet, so it can be read from any thread without locking. Adding or removing Rules
+ * copies the list and indexes of the previous snapshot (copy-on-write, O(n) in number of Rules, done only
+ * by commands and reloads) and recompiles only table buckets of the changed inputs; lookups stay O(1).
+ * @author LookyR
+ */
+public final class RuleSet {
+    
+    /**
+     * Empty snapshot, used before any rule is loaded
+     */
+    public static final RuleSet EMPTY = new RuleSet(
+            Collections.<Rule>emptyList(),
+            Collections.<UUID>emptySet(),
+            Collections.<UUID>emptyList()
+    );
+    
+    /**
+     * Orders Rules by priority, higher first; sorting is stable, so equal Rules keep order of adding
+     */
+    static final Comparator<Rule> PRIORITY = new Comparator<Rule>() {
+        @Override
+        public int compare(Rule a, Rule b) {
+            return Integer.compare(b.priority, a.priority);
+        }
+    };
+    
+    /**
+     * List of Rules in order of evaluation, unmodifiable
+     * @see Rule
+     */
+    public final List<Rule> rules;
+    
+    /**
+     * UUIDs of Worlds where rules are applied, empty for all Worlds, unmodifiable
+     */
+    public final Set<UUID> worlds;
+    
+    /**
+     * Use getTable(), Rules compiled for each loaded World
+     */
+    private final HashMap<UUID, RuleTable> tables;
+    
+    /**
+     * Use getRule(), Rules by id
+     */
+    private final HashMap<Integer, Rule> ids;
+    
+    /**
+     * Use getRules(), Rules by Rule.inputKey(), each list in order of evaluation
+     */
+    private final HashMap<String, List<Rule>> inputs;
+    
+    /**
+     * Rules by Rule.getSlot()
+     */
+    private final HashMap<String, Rule> slots;
+    
+    /**
+     * Use completions(), built on first use
+     */
+    private volatile PrefixIndex completions;
+    
+    /**
+     * Creates new snapshot and compiles Rules for loaded Worlds
+     * @param rules Rules in order of adding, sorted by priority here
+     * @param worlds UUIDs of Worlds where rules are applied, empty for all Worlds
+     * @param loaded UUIDs of loaded Worlds
+     * @throws NullPointerException When any argument is null or rules contains a null value
+     */
+    public RuleSet(List<Rule> rules, Set<UUID> worlds, Collection<UUID> loaded) {
+        ArrayList<Rule> sorted = new ArrayList(rules);
+        Collections.sort(sorted, PRIORITY);
+        this.rules = Collections.unmodifiableList(sorted);
+        this.worlds = Collections.unmodifiableSet(new HashSet(worlds));
+        ids = new HashMap(sorted.size() * 2);
+        inputs = new HashMap();
+        slots = new HashMap(sorted.size() * 2);
+        for(Rule rule : sorted) {
+            ids.put(rule.id, rule);
+            slots.put(rule.getSlot(), rule);
+            List<Rule> list = inputs.get(rule.inputKey());
+            if(list == null)
+                inputs.put(rule.inputKey(), list = new ArrayList(1));
+            list.add(rule);
+        }
+        for(Map.Entry<String, List<Rule>> entry : inputs.entrySet())
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        tables = new HashMap();
+        for(UUID world : loaded)
+            if(isEnabled(world))
+                tables.put(world, new RuleTable(this.rules, world));
+    }
+    
+    /**
+     * Used in bind(), withWorld() and withoutWorld()
+     * @param base Snapshot to take Rules and indexes from
+     * @param tables Tables, not shared with other snapshot
+     */
+    private RuleSet(RuleSet base, HashMap<UUID, RuleTable> tables) {
+        rules = base.rules;
+        worlds = base.worlds;
+        ids = base.ids;
+        inputs = base.inputs;
+        slots = base.slots;
+        this.tables = tables;
+    }
+    
+    /**
+     * Used in withRule(), withRules() and withoutRule(), updates copies of indexes and tables of base instead of
+     * rebuilding them: O(n) copying, but Rules are not sorted or compiled again
+     * @param base Previous snapshot
+     * @param removed Rules of base to leave out
+     * @param added Rules to add, in order of adding
+     */
+    private RuleSet(RuleSet base, Collection<Rule> removed, List<Rule> added) {
+        Set<Rule> gone = Collections.newSetFromMap(new IdentityHashMap());
+        gone.addAll(removed);
+        ArrayList<Rule> sorted = new ArrayList(added);
+        Collections.sort(sorted, PRIORITY);
+        rules = Collections.unmodifiableList(insert(base.rules, gone, sorted));
+        worlds = base.worlds;
+        ids = new HashMap(base.ids);
+        slots = new HashMap(base.slots);
+        inputs = new HashMap(base.inputs);
+        HashMap<String, List<Rule>> keys = new HashMap();
+        for(Rule rule : removed) {
+            ids.remove(rule.id);
+            if(slots.get(rule.getSlot()) == rule)
+                slots.remove(rule.getSlot());
+            keys.put(rule.inputKey(), new ArrayList(1));
+        }
+        for(Rule rule : sorted) {
+            ids.put(rule.id, rule);
+            slots.put(rule.getSlot(), rule);
+            List<Rule> same = keys.get(rule.inputKey());
+            if(same == null)
+                keys.put(rule.inputKey(), same = new ArrayList(1));
+            same.add(rule);
+        }
+        for(Map.Entry<String, List<Rule>> entry : keys.entrySet()) {
+            List<Rule> list = insert(base.getRules(entry.getKey()), gone, entry.getValue());
+            if(list.isEmpty())
+                inputs.remove(entry.getKey());
+            else
+                inputs.put(entry.getKey(), Collections.unmodifiableList(list));
+        }
+        ArrayList<Rule> changed = new ArrayList(removed);
+        changed.addAll(added);
+        tables = new HashMap();
+        for(Map.Entry<UUID, RuleTable> entry : base.tables.entrySet())
+            tables.put(entry.getKey(), new RuleTable(entry.getValue(), rules, changed));
+    }
+    
+    /**
+     * Merges Rules into a list in order of evaluation, used in constructor
+     * @param rules Rules in order of evaluation
+     * @param gone Rules to leave out
+     * @param added Rules to add, sorted by PRIORITY; each goes after all Rules with the same or higher priority
+     * @return New list in order of evaluation
+     */
+    private static ArrayList<Rule> insert(List<Rule> rules, Set<Rule> gone, List<Rule> added) {
+        ArrayList<Rule> list = new ArrayList(rules.size() + added.size());
+        int next = 0;
+        for(Rule rule : rules) {
+            if(gone.contains(rule))
+                continue;
+            for(; next < added.size() && added.get(next).priority > rule.priority; next++)
+                list.add(added.get(next));
+            list.add(rule);
+        }
+        list.addAll(added.subList(next, added.size()));
+        return list;
+    }
+    
+    /**
+     * Returns Rules compiled for a World
+     * @param world UUID of the World
+     * @return RuleTable or null if the World is not loaded or rules are not applied there
+     */
+    public final RuleTable getTable(UUID world) {
+        return tables.get(world);
+    }
+    
+    /**
+     * Returns index of Rule ids ("#12") and inputs ("wool:14"), used for tab completion
+     * @return PrefixIndex, built on first use
+     */
+    public final PrefixIndex completions() {
+        PrefixIndex index = completions;
+        if(index == null) {
+            ArrayList<String> words = new ArrayList(rules.size() * 2);
+            for(Rule rule : rules) {
+                words.add("#" + rule.id);
+                words.add(rule.inputKey());
+            }
+            completions = index = new PrefixIndex(words);
+        }
+        return index;
+    }
+    
+    /**
+     * Checks, whether no Rule can apply anywhere, so events don't need to be handled at all
+     * @return true if no loaded World has a Rule
+     */
+    public final boolean isIdle() {
+        for(RuleTable table : tables.values())
+            if(!table.isEmpty())
+                return false;
+        return true;
+    }
+    
+    /**
+     * Checks, whether rules are applied in a World
+     * @param world UUID of the World
+     * @return true if the World is enabled
+     */
+    public final boolean isEnabled(UUID world) {
+        return worlds.isEmpty() || worlds.contains(world);
+    }
+    
+    /**
+     * Returns Rule with given id
+     * @param id Unique number of the Rule
+     * @return Rule or null if there is none
+     */
+    public final Rule getRule(int id) {
+        return ids.get(id);
+    }
+    
+    /**
+     * Returns Rules with given input
+     * @param input Input block (or group) and data value, see Rule.inputKey()
+     * @return Unmodifiable list of Rules in order of evaluation, empty if there is none
+     */
+    public final List<Rule> getRules(String input) {
+        List<Rule> list = inputs.get(input);
+        return list == null ? Collections.<Rule>emptyList() : list;
+    }
+    
+    /**
+     * Creates snapshot with a Rule added, an old Rule with the same slot (input and Areas) is left out
+     * @param rule New Rule
+     * @return New snapshot
+     */
+    public final RuleSet withRule(Rule rule) {
+        Rule old = slots.get(rule.getSlot());
+        return new RuleSet(this, old == null ? Collections.<Rule>emptyList() : Collections.singletonList(old),
+                Collections.singletonList(rule));
+    }
+    
+    /**
+     * Creates snapshot with many Rules added at once, same as calling withRule() for each of them
+     * @param added New Rules in order
+     * @return New snapshot
+     */
+    public final RuleSet withRules(List<Rule> added) {
+        HashMap<String, Rule> last = new HashMap();
+        for(Rule rule : added)
+            last.put(rule.getSlot(), rule);
+        ArrayList<Rule> removed = new ArrayList();
+        for(String slot : last.keySet())
+            if(slots.containsKey(slot))
+                removed.add(slots.get(slot));
+        ArrayList<Rule> list = new ArrayList(last.size());
+        for(Rule rule : added)
+            if(last.get(rule.getSlot()) == rule)
+                list.add(rule);
+        return new RuleSet(this, removed, list);
+    }
+    
+    /**
+     * Creates snapshot with a Rule left out
+     * @param rule Rule to remove
+     * @return New snapshot, or this one if it doesn't contain the Rule
+     */
+    public final RuleSet withoutRule(Rule rule) {
+        if(ids.get(rule.id) != rule)
+            return this;
+        return new RuleSet(this, Collections.singletonList(rule), Collections.<Rule>emptyList());
+    }
+    
+    /**
+     * Creates snapshot with another list of Rules, keeping Rules which didn't change.
+     * A parsed Rule with same definition (see Rule.getKey()) as a current one is replaced by the current one,
+     * so it keeps its id and compiled Areas.
+     * @param parsed New Rules in order of evaluation
+     * @param worlds UUIDs of Worlds where rules are applied, empty for all Worlds
+     * @param loaded UUIDs of loaded Worlds
+     * @return New snapshot
+     */
+    public final RuleSet merge(List<Rule> parsed, Set<UUID> worlds, Collection<UUID> loaded) {
+        HashMap<String, Rule> live = new HashMap(rules.size() * 2);
+        for(Rule rule : rules)
+            live.put(rule.getKey(), rule);
+        ArrayList<Rule> list = new ArrayList(parsed.size());
+        for(Rule rule : parsed) {
+            Rule old = live.remove(rule.getKey());
+            list.add(old == null ? rule : old);
+        }
+        return new RuleSet(list, worlds, loaded);
+    }
+    
+    /**
+     * Creates snapshot with tables for exactly the given Worlds, existing tables are reused
+     * @param loaded UUIDs of loaded Worlds
+     * @return New snapshot
+     */
+    public final RuleSet bind(Collection<UUID> loaded) {
+        HashMap<UUID, RuleTable> map = new HashMap();
+        for(UUID world : loaded)
+            if(isEnabled(world)) {
+                RuleTable table = tables.get(world);
+                map.put(world, table == null ? new RuleTable(rules, world) : table);
+            }
+        return new RuleSet(this, map);
+    }
+    
+    /**
+     * Creates snapshot with Rules compiled for a newly loaded World
+     * @param world UUID of the World
+     * @return New snapshot, or this one if rules are not applied in the World
+     */
+    public final RuleSet withWorld(UUID world) {
+        if(!isEnabled(world))
+            return this;
+        HashMap<UUID, RuleTable> map = new HashMap(tables);
+        map.put(world, new RuleTable(rules, world));
+        return new RuleSet(this, map);
+    }
+    
+    /**
+     * Creates snapshot without Rules compiled for an unloaded World
+     * @param world UUID of the World
+     * @return New snapshot, or this one if there was no table for the World
+     */
+    public final RuleSet withoutWorld(UUID world) {
+        if(!tables.containsKey(world))
+            return this;
+        HashMap<UUID, RuleTable> map = new HashMap(tables);
+        map.remove(world);
+        return new RuleSet(this, map);
+    }
+}
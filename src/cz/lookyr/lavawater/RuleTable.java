@@ -0,0 +1,258 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.Material;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents Rules of one World compiled into a table indexed by type ID.
+ * Rules for groups of inputs are expanded into the bucket of each member.
+ * Types with data-qualified Rules (e.g. "wool:14") also get one bucket per data value, keyed by id &lt;&lt; 4 | data,
+ * holding both the qualified Rules and the Rules for any data value.
+ * Rules sharing an input keep the order they had in the source list.
+ * Rules which can't apply anywhere in the World are left out.
+ * @author LookyR
+ */
+public final class RuleTable {
+
+    /**
+     * UUID of the World
+     */
+    public final UUID world;
+
+    /**
+     * Latency of the event handler in the World, shared by all tables of the World
+     * @see Metrics
+     */
+    public final Histogram latency;
+
+    /**
+     * Rules for any data value by type ID, use get()
+     */
+    private final Entry[][] table;
+
+    /**
+     * Types which have data-qualified Rules, by type ID
+     */
+    private final boolean[] qualified;
+
+    /**
+     * Rules for one data value by id &lt;&lt; 4 | data, use get()
+     */
+    private final IntMap<Entry[]> exact;
+
+    /**
+     * Compiled Rules in order of evaluation, reused by the constructor for changed Rules
+     */
+    private final Entry[] entries;
+
+    /**
+     * Compiles Rules into a table for one World
+     * @param rules Rules in order of evaluation
+     * @param world UUID of the World
+     * @throws NullPointerException When rules is null or contains a null value
+     */
+    public RuleTable(List<Rule> rules, UUID world) {
+        this.world = world;
+        latency = Metrics.latency(world);
+        int length = 0;
+        for(Rule rule : rules)
+            for(Material material : rule.inputs.materials())
+                length = Math.max(length, material.getId() + 1);
+        ArrayList<Entry>[] buckets = new ArrayList[length];
+        ArrayList<Entry> list = new ArrayList(rules.size());
+        qualified = new boolean[length];
+        for(Rule rule : rules) {
+            Entry entry = compile(rule, world);
+            if(entry == null)
+                continue;
+            list.add(entry);
+            for(Material material : rule.inputs.materials()) {
+                int i = material.getId();
+                if(rule.inputData >= 0)
+                    qualified[i] = true;
+                else {
+                    if(buckets[i] == null)
+                        buckets[i] = new ArrayList(1);
+                    buckets[i].add(entry);
+                }
+            }
+        }
+        entries = list.toArray(new Entry[list.size()]);
+        table = new Entry[length][];
+        for(int i = 0; i < length; i++)
+            if(buckets[i] != null)
+                table[i] = buckets[i].toArray(new Entry[buckets[i].size()]);
+        exact = new IntMap(16);
+        for(int i = 0; i < length; i++)
+            if(qualified[i])
+                putExact(i);
+    }
+
+    /**
+     * Compiles a changed list of Rules, reusing compiled Rules and buckets of types no changed Rule has as input
+     * @param base Table of the same World compiled before the change
+     * @param rules Rules in order of evaluation, after the change
+     * @param changed Added and removed Rules
+     * @throws NullPointerException When any argument is null or contains a null value
+     */
+    public RuleTable(RuleTable base, List<Rule> rules, Collection<Rule> changed) {
+        world = base.world;
+        latency = base.latency;
+        IdentityHashMap<Rule, Entry> compiled = new IdentityHashMap(base.entries.length * 2);
+        for(Entry entry : base.entries)
+            compiled.put(entry.rule, entry);
+        ArrayList<Entry> list = new ArrayList(rules.size());
+        for(Rule rule : rules) {
+            Entry entry = compiled.get(rule);
+            if(entry == null)
+                entry = compile(rule, world);
+            if(entry != null)
+                list.add(entry);
+        }
+        entries = list.toArray(new Entry[list.size()]);
+        int length = base.table.length;
+        for(Rule rule : changed)
+            for(Material material : rule.inputs.materials())
+                length = Math.max(length, material.getId() + 1);
+        boolean[] affected = new boolean[length];
+        for(Rule rule : changed)
+            for(Material material : rule.inputs.materials())
+                affected[material.getId()] = true;
+        table = Arrays.copyOf(base.table, length);
+        qualified = Arrays.copyOf(base.qualified, length);
+        exact = new IntMap(16);
+        for(int i = 0; i < length; i++) {
+            if(!affected[i]) {
+                if(qualified[i])
+                    for(int data = 0; data < 16; data++) {
+                        Entry[] bucket = base.exact.get(i << 4 | data);
+                        if(bucket != null)
+                            exact.put(i << 4 | data, bucket);
+                    }
+                continue;
+            }
+            Material type = Material.getMaterial(i);
+            ArrayList<Entry> bucket = new ArrayList(1);
+            qualified[i] = false;
+            for(Entry entry : entries)
+                if(entry.rule.inputs.contains(type)) {
+                    if(entry.rule.inputData >= 0)
+                        qualified[i] = true;
+                    else
+                        bucket.add(entry);
+                }
+            table[i] = bucket.isEmpty() ? null : bucket.toArray(new Entry[bucket.size()]);
+            if(qualified[i])
+                putExact(i);
+        }
+    }
+
+    /**
+     * Compiles Areas of a Rule for the World, used in constructors
+     * @param rule
+     * @param world
+     * @return Entry or null if the Rule can't apply anywhere in the World
+     */
+    private static Entry compile(Rule rule, UUID world) {
+        AreaIndex index = rule.index(world);
+        if(index != null && index.isEmpty()) {
+            if(!index.getFallback())
+                return null;
+            index = null;
+        }
+        return new Entry(rule, index);
+    }
+
+    /**
+     * Fills buckets of a type with data-qualified Rules, one for each data value, used in constructors
+     * @param type Type ID
+     */
+    private void putExact(int type) {
+        Material material = Material.getMaterial(type);
+        for(int data = 0; data < 16; data++) {
+            ArrayList<Entry> bucket = new ArrayList(1);
+            for(Entry entry : entries)
+                if(entry.rule.accepts(material, data))
+                    bucket.add(entry);
+            if(!bucket.isEmpty())
+                exact.put(type << 4 | data, bucket.toArray(new Entry[bucket.size()]));
+        }
+    }
+
+    /**
+     * Returns Rules matching a flooded block
+     * @param type Type ID of flooded block
+     * @param data Data value of flooded block
+     * @return Array of entries in order of evaluation, or null if no Rule matches
+     */
+    public final Entry[] get(int type, int data) {
+        if(type < 0 || type >= table.length)
+            return null;
+        if(qualified[type])
+            return exact.get(type << 4 | (data & 15));
+        return table[type];
+    }
+
+    /**
+     * Checks, whether no Rule applies anywhere in the World
+     * @return true if the table has no Rules
+     */
+    public final boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * This class is part of LavaWater Bukkit plugin.
+     * It represents a Rule with its Areas compiled for the World of the table.
+     */
+    public static final class Entry {
+
+        /**
+         * The Rule
+         */
+        public final Rule rule;
+
+        /**
+         * Use appliesTo(), null means everywhere
+         */
+        private final AreaIndex areas;
+
+        /**
+         * Used in RuleTable constructor
+         * @param rule
+         * @param areas
+         */
+        private Entry(Rule rule, AreaIndex areas) {
+            this.rule = rule;
+            this.areas = areas;
+        }
+
+        /**
+         * Checks, whether the Rule applies to a block in the World of the table
+         * @param x X coordinate of the block
+         * @param y Y coordinate of the block
+         * @param z Z coordinate of the block
+         * @return true if the Rule applies to the block
+         */
+        public final boolean appliesTo(int x, int y, int z) {
+            return areas == null || areas.appliesTo(x, y, z);
+        }
+    }
+}
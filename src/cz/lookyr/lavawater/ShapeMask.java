@@ -0,0 +1,190 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.Arrays;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It represents a 2D shape (polygon or circle) rasterized into 256-bit masks of chunks (16 x 16 blocks, 4 longs).
+ * Chunks fully inside share one full mask, chunks outside have none, so a check is one map lookup and one bit test
+ * regardless of the number of vertices. A block is inside if its X, Z lies inside the shape or on its edge.
+ * @author LookyR
+ */
+public final class ShapeMask {
+    
+    /**
+     * Largest allowed width or length of a shape in blocks
+     */
+    public static final int MAX_SIZE = 16384;
+    
+    /**
+     * Mask shared by chunks fully inside
+     */
+    private static final long[] FULL = {-1L, -1L, -1L, -1L};
+    
+    /**
+     * Masks by chunk key, use contains()
+     */
+    private final LongMap<long[]> masks;
+    
+    /**
+     * Keys of masks, used while building
+     */
+    private long[] keys = new long[16];
+    
+    /**
+     * Number of masks, used while building
+     */
+    private int size = 0;
+    
+    /**
+     * Used in polygon() and cylinder()
+     * @param expected Expected number of chunks
+     */
+    private ShapeMask(int expected) {
+        masks = new LongMap(expected);
+    }
+    
+    /**
+     * Rasterizes a polygon
+     * @param x X coordinates of vertices
+     * @param z Z coordinates of vertices, same length as x
+     * @return New mask
+     * @throws IllegalArgumentException When there are less than 3 vertices or the polygon is larger than MAX_SIZE
+     */
+    public static ShapeMask polygon(int[] x, int[] z) {
+        int n = x.length;
+        if(n < 3 || z.length != n)
+            throw new IllegalArgumentException("Polygon needs at least 3 vertices");
+        int minX = x[0], maxX = x[0], minZ = z[0], maxZ = z[0];
+        for(int i = 1; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        check((long)maxX - minX, (long)maxZ - minZ);
+        ShapeMask shape = new ShapeMask((maxX - minX) / 16 + (maxZ - minZ) / 16 + 16);
+        double[] crossings = new double[n];
+        for(int row = minZ; row <= maxZ; row++) {
+            int count = 0;
+            for(int i = 0; i < n; i++) {
+                int j = (i + 1) % n;
+                if(z[i] == z[j]) {
+                    if(z[i] == row)
+                        shape.fill(Math.min(x[i], x[j]), Math.max(x[i], x[j]), row);
+                    continue;
+                }
+                int low = Math.min(z[i], z[j]), high = Math.max(z[i], z[j]);
+                if(low <= row && row < high)
+                    crossings[count++] = x[i] + (double)(row - z[i]) * (x[j] - x[i]) / (z[j] - z[i]);
+                else if(row == high)
+                    shape.fill(z[i] == high ? x[i] : x[j], z[i] == high ? x[i] : x[j], row);
+            }
+            Arrays.sort(crossings, 0, count);
+            for(int i = 0; i + 1 < count; i += 2) {
+                int from = (int)Math.ceil(crossings[i]), to = (int)Math.floor(crossings[i + 1]);
+                if(from <= to)
+                    shape.fill(from, to, row);
+            }
+        }
+        return shape.compact();
+    }
+    
+    /**
+     * Rasterizes a circle
+     * @param x X coordinate of the center
+     * @param z Z coordinate of the center
+     * @param radius Radius in blocks
+     * @return New mask
+     * @throws IllegalArgumentException When radius is negative or the circle is larger than MAX_SIZE
+     */
+    public static ShapeMask cylinder(int x, int z, int radius) {
+        if(radius < 0)
+            throw new IllegalArgumentException("Invalid radius: " + radius);
+        check(2L * radius, 2L * radius);
+        ShapeMask shape = new ShapeMask(radius / 4 + 16);
+        long square = (long)radius * radius;
+        for(int dz = -radius; dz <= radius; dz++) {
+            long rest = square - (long)dz * dz;
+            long half = (long)Math.sqrt(rest);
+            while(half * half > rest)
+                half--;
+            while((half + 1) * (half + 1) <= rest)
+                half++;
+            shape.fill(x - (int)half, x + (int)half, z + dz);
+        }
+        return shape.compact();
+    }
+    
+    /**
+     * Used in polygon() and cylinder()
+     * @param width
+     * @param length
+     * @throws IllegalArgumentException When the shape is too large
+     */
+    private static void check(long width, long length) {
+        if(width >= MAX_SIZE || length >= MAX_SIZE)
+            throw new IllegalArgumentException("Area is larger than " + MAX_SIZE + " blocks");
+    }
+    
+    /**
+     * Checks, whether a block is inside the shape
+     * @param x X coordinate of the block
+     * @param z Z coordinate of the block
+     * @return true if the block is inside or on the edge
+     */
+    public final boolean contains(int x, int z) {
+        long[] mask = masks.get(LongMap.chunkKey(x >> 4, z >> 4));
+        if(mask == null)
+            return false;
+        int bit = (z & 15) << 4 | (x & 15);
+        return (mask[bit >> 6] >>> (bit & 63) & 1) != 0;
+    }
+    
+    /**
+     * Marks a row of blocks as inside, used while building
+     * @param from First X coordinate
+     * @param to Last X coordinate, not smaller than from
+     * @param z Z coordinate
+     */
+    private void fill(int from, int to, int z) {
+        int shift = (z & 3) << 4;
+        for(int cx = from >> 4; cx <= to >> 4; cx++) {
+            long key = LongMap.chunkKey(cx, z >> 4);
+            long[] mask = masks.get(key);
+            if(mask == null) {
+                masks.put(key, mask = new long[4]);
+                if(size == keys.length)
+                    keys = Arrays.copyOf(keys, size * 2);
+                keys[size++] = key;
+            }
+            int low = Math.max(from, cx << 4) & 15, high = Math.min(to, (cx << 4) + 15) & 15;
+            long bits = (0xFFFFL >>> (15 - high + low)) << low;
+            mask[(z & 15) >> 2] |= bits << shift;
+        }
+    }
+    
+    /**
+     * Replaces full masks by the shared one, used after building
+     * @return This mask
+     */
+    private ShapeMask compact() {
+        for(int i = 0; i < size; i++) {
+            long[] mask = masks.get(keys[i]);
+            if(mask[0] == -1L && mask[1] == -1L && mask[2] == -1L && mask[3] == -1L)
+                masks.put(keys[i], FULL);
+        }
+        keys = null;
+        return this;
+    }
+}
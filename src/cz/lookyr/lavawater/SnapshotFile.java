@@ -0,0 +1,261 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Material;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It reads and writes a binary copy of config.yml (rules.dat), so startup doesn't have to parse YAML.
+ * The file starts with a SHA-1 hash of config.yml and aliases.yml (names in Rules depend on aliases);
+ * when either of them is edited, the hash doesn't match and the copy is ignored.
+ * After the header follow settings, UUIDs of Worlds and Rules; strings are an int length and UTF-8 bytes.
+ * Rules are stored resolved - type ids, data values, weights and Area bounds - so nothing is looked up by name
+ * when they are read; input and output strings are kept only for messages and saving.
+ * The file is read into memory at once (a mapping would keep it locked on Windows until garbage collected)
+ * and written through a temporary file, so it is never left half-written.
+ * @author LookyR
+ */
+public final class SnapshotFile {
+    
+    /**
+     * First int of the file, "LWS3"
+     */
+    private static final int MAGIC = 0x4C575333;
+    
+    /**
+     * Length of the hash in bytes
+     */
+    private static final int HASH = 20;
+    
+    /**
+     * Encoding of strings
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * Static class
+     */
+    private SnapshotFile() {}
+    
+    /**
+     * Computes the hash the snapshot is validated against
+     * @param config Content of config.yml
+     * @param aliases aliases.yml, doesn't need to exist
+     * @return SHA-1 of both files
+     * @throws IOException When aliases.yml can't be read
+     */
+    public static byte[] hash(byte[] config, File aliases) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(config);
+        digest.update((byte)0);
+        if(aliases.isFile())
+            digest.update(Files.readAllBytes(aliases.toPath()));
+        return digest.digest();
+    }
+    
+    /**
+     * Reads the snapshot, if it was written for the same config.yml and aliases.yml
+     * @param file Snapshot, usually rules.dat in the plugin folder, doesn't need to exist
+     * @param hash Hash of current config.yml and aliases.yml, see hash()
+     * @param logger Logger for warnings
+     * @return Content of config.yml or null if the snapshot is missing, outdated or damaged
+     * @throws IOException When the file can't be read
+     */
+    public static ConfigLoader read(File file, byte[] hash, Logger logger) throws IOException {
+        if(!file.isFile() || file.length() < 4 + HASH)
+            return null;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if(buffer.getInt() != MAGIC)
+            return null;
+        for(int i = 0; i < HASH; i++)
+            if(buffer.get() != hash[i])
+                return null;
+        try {
+            ConfigLoader config = new ConfigLoader();
+            config.unloadedChunks = ChunkPolicy.values()[buffer.get()];
+            config.batchPlacement = buffer.get() != 0;
+            config.chunkQuota = buffer.getInt();
+            config.metricsPort = buffer.getInt();
+            config.auditHours = buffer.getInt();
+            for(int i = buffer.getInt(); i > 0; i--)
+                config.worlds.add(new UUID(buffer.getLong(), buffer.getLong()));
+            int count = buffer.getInt();
+            if(count < 0 || count > buffer.remaining())
+                throw new IllegalArgumentException("Invalid number of rules: " + count);
+            config.rules.ensureCapacity(count);
+            for(int i = 0; i < count; i++) {
+                String input = getString(buffer), output = getString(buffer);
+                String name = getString(buffer);
+                ArrayList<Material> types = new ArrayList();
+                for(int j = getCount(buffer, 4); j > 0; j--)
+                    types.add(getMaterial(buffer));
+                MaterialSet inputs = new MaterialSet(name, types);
+                int inputData = buffer.get();
+                int size = getCount(buffer, 13);
+                Material[] materials = new Material[size];
+                byte[] data = new byte[size];
+                double[] weights = new double[size];
+                for(int j = 0; j < size; j++) {
+                    materials[j] = getMaterial(buffer);
+                    data[j] = buffer.get();
+                    weights[j] = buffer.getDouble();
+                }
+                OutputTable outputs = new OutputTable(materials, data, weights);
+                boolean needWater = buffer.get() != 0;
+                int quota = buffer.getInt(), priority = buffer.getInt();
+                Area[] areas = new Area[getCount(buffer, 3)];
+                for(int j = 0; j < areas.length; j++)
+                    areas[j] = Area.read(buffer);
+                config.rules.add(new Rule(inputs, inputData, outputs, input, output, needWater, areas, quota, priority));
+            }
+            if(buffer.hasRemaining())
+                throw new IllegalArgumentException("Trailing data");
+            return config;
+        } catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException
+                | EnumConstantNotPresentException ex) {
+            logger.log(Level.WARNING, "Damaged {0}, reading config.yml: {1}", new Object[] {file.getName(), ex});
+            return null;
+        }
+    }
+    
+    /**
+     * Writes the snapshot, through a temporary file
+     * @param file Target file
+     * @param hash Hash of config.yml and aliases.yml the snapshot is a copy of, see hash()
+     * @param config Content of config.yml, Rules in order of the file
+     * @throws IOException When writing fails
+     */
+    public static void write(File file, byte[] hash, ConfigLoader config) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.write(hash, 0, HASH);
+                out.writeByte(config.unloadedChunks.ordinal());
+                out.writeByte(config.batchPlacement ? 1 : 0);
+                out.writeInt(config.chunkQuota);
+                out.writeInt(config.metricsPort);
+                out.writeInt(config.auditHours);
+                out.writeInt(config.worlds.size());
+                for(UUID world : config.worlds) {
+                    out.writeLong(world.getMostSignificantBits());
+                    out.writeLong(world.getLeastSignificantBits());
+                }
+                out.writeInt(config.rules.size());
+                for(Rule rule : config.rules) {
+                    putString(out, rule.inputString);
+                    putString(out, rule.outputString);
+                    putString(out, rule.inputs.toString());
+                    List<Material> types = rule.inputs.materials();
+                    out.writeInt(types.size());
+                    for(Material type : types)
+                        out.writeInt(type.getId());
+                    out.writeByte(rule.inputData);
+                    out.writeInt(rule.outputs.size());
+                    for(int i = 0; i < rule.outputs.size(); i++) {
+                        out.writeInt(rule.outputs.get(i).getId());
+                        out.writeByte(rule.outputs.data(i));
+                        out.writeDouble(rule.outputs.weight(i));
+                    }
+                    out.writeByte(rule.needWater ? 1 : 0);
+                    out.writeInt(rule.quota);
+                    out.writeInt(rule.priority);
+                    Area[] areas = rule.areas();
+                    out.writeInt(areas.length);
+                    for(Area area : areas)
+                        area.write(out);
+                }
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+    
+    /**
+     * Used in read()
+     * @param buffer
+     * @param bytes Least number of bytes of each item, so a damaged count can't allocate more than the file holds
+     * @return Number of items at current position
+     * @throws IllegalArgumentException When the count is negative or larger than the rest of the file
+     */
+    private static int getCount(ByteBuffer buffer, int bytes) {
+        int count = buffer.getInt();
+        if(count < 0 || count > buffer.remaining() / bytes)
+            throw new IllegalArgumentException("Invalid count: " + count);
+        return count;
+    }
+    
+    /**
+     * Used in read()
+     * @param buffer
+     * @return Material with the type id at current position
+     * @throws IllegalArgumentException When there is no such Material
+     */
+    private static Material getMaterial(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        Material material = Material.getMaterial(id);
+        if(material == null)
+            throw new IllegalArgumentException("Unknown type id: " + id);
+        return material;
+    }
+    
+    /**
+     * Used in read() and Area.read()
+     * @param buffer
+     * @return String at current position
+     */
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[getCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+    
+    /**
+     * Used in write() and Area.write()
+     * @param out
+     * @param string
+     * @throws IOException
+     */
+    static void putString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It runs tasks on the right thread: on region-threaded servers (Folia) through their region, global and async
+ * schedulers, found by reflection, otherwise through the Bukkit scheduler, where all synchronous tasks run
+ * on the main thread. Such servers don't load the plugin yet: it isn't marked folia-supported in plugin.yml
+ * while it uses type IDs, which they don't have.
+ * @author LookyR
+ */
+public final class TaskScheduler {
+    
+    /**
+     * true on region-threaded servers, where events of different chunks may fire on different threads at once
+     */
+    public static final boolean REGIONIZED;
+    
+    /**
+     * java.util.function.Consumer, the type of Folia tasks, null if not REGIONIZED
+     */
+    private static final Class<?> CONSUMER;
+    
+    /**
+     * Folia schedulers, null if not REGIONIZED
+     */
+    private static final Object REGION, GLOBAL, ASYNC;
+    
+    /**
+     * Methods of Folia schedulers, null if not REGIONIZED
+     */
+    private static final Method REGION_RUN, GLOBAL_RUN, ASYNC_RUN, ASYNC_DELAYED;
+    
+    /**
+     * Bukkit.isOwnedByCurrentRegion(World, int, int), null if not REGIONIZED
+     */
+    private static final Method OWNED;
+    
+    static {
+        Class<?> consumer = null;
+        Object region = null, global = null, async = null;
+        Method regionRun = null, globalRun = null, asyncRun = null, asyncDelayed = null, owned = null;
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            String prefix = "io.papermc.paper.threadedregions.scheduler.";
+            consumer = Class.forName("java.util.function.Consumer");
+            region = Bukkit.class.getMethod("getRegionScheduler").invoke(null);
+            global = Bukkit.class.getMethod("getGlobalRegionScheduler").invoke(null);
+            async = Bukkit.class.getMethod("getAsyncScheduler").invoke(null);
+            regionRun = Class.forName(prefix + "RegionScheduler")
+                    .getMethod("run", Plugin.class, World.class, int.class, int.class, consumer);
+            globalRun = Class.forName(prefix + "GlobalRegionScheduler").getMethod("run", Plugin.class, consumer);
+            Class<?> type = Class.forName(prefix + "AsyncScheduler");
+            asyncRun = type.getMethod("runNow", Plugin.class, consumer);
+            asyncDelayed = type.getMethod("runDelayed", Plugin.class, consumer, long.class, TimeUnit.class);
+            owned = Bukkit.class.getMethod("isOwnedByCurrentRegion", World.class, int.class, int.class);
+        } catch(ReflectiveOperationException | RuntimeException ex) {
+            consumer = null;
+        }
+        REGIONIZED = consumer != null;
+        CONSUMER = consumer;
+        REGION = region;
+        GLOBAL = global;
+        ASYNC = async;
+        REGION_RUN = regionRun;
+        GLOBAL_RUN = globalRun;
+        ASYNC_RUN = asyncRun;
+        ASYNC_DELAYED = asyncDelayed;
+        OWNED = owned;
+    }
+    
+    /**
+     * Static class
+     */
+    private TaskScheduler() {}
+    
+    /**
+     * Runs a task in the next tick on the thread owning a chunk
+     * @param plugin Plugin which owns the task
+     * @param world World of the chunk
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @param task The task
+     */
+    public static void runAt(Plugin plugin, World world, int chunkX, int chunkZ, Runnable task) {
+        if(REGIONIZED)
+            call(REGION_RUN, REGION, plugin, world, chunkX, chunkZ, consumer(task));
+        else
+            Bukkit.getScheduler().runTask(plugin, task);
+    }
+    
+    /**
+     * Runs a task in the next tick on the thread owning server-wide state (the main thread on Bukkit)
+     * @param plugin Plugin which owns the task
+     * @param task The task
+     */
+    public static void runGlobal(Plugin plugin, Runnable task) {
+        if(REGIONIZED)
+            call(GLOBAL_RUN, GLOBAL, plugin, consumer(task));
+        else
+            Bukkit.getScheduler().runTask(plugin, task);
+    }
+    
+    /**
+     * Runs a task off the server threads
+     * @param plugin Plugin which owns the task
+     * @param task The task
+     */
+    public static void runAsync(Plugin plugin, Runnable task) {
+        if(REGIONIZED)
+            call(ASYNC_RUN, ASYNC, plugin, consumer(task));
+        else
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+    
+    /**
+     * Runs a task off the server threads after a delay
+     * @param plugin Plugin which owns the task
+     * @param task The task
+     * @param ticks Delay in ticks (50 ms)
+     */
+    public static void runAsyncLater(Plugin plugin, Runnable task, long ticks) {
+        if(REGIONIZED)
+            call(ASYNC_DELAYED, ASYNC, plugin, consumer(task), ticks * 50, TimeUnit.MILLISECONDS);
+        else
+            Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, task, ticks);
+    }
+    
+    /**
+     * Checks whether the current thread may access a chunk
+     * @param world World of the chunk
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return true if the current thread owns the region of the chunk (is the main thread on Bukkit)
+     */
+    public static boolean isOwned(World world, int chunkX, int chunkZ) {
+        if(REGIONIZED)
+            return Boolean.TRUE.equals(call(OWNED, null, world, chunkX, chunkZ));
+        return Bukkit.isPrimaryThread();
+    }
+    
+    /**
+     * Wraps a task into java.util.function.Consumer, used with Folia schedulers
+     * @param task
+     * @return Consumer calling the task
+     */
+    private static Object consumer(final Runnable task) {
+        return Proxy.newProxyInstance(TaskScheduler.class.getClassLoader(), new Class[] {CONSUMER}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch(method.getName()) {
+                    case "accept":
+                        task.run();
+                        return null;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return task.toString();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Calls a method of a Folia scheduler or Bukkit
+     * @param method
+     * @param target
+     * @param args
+     * @return Result of the method
+     * @throws IllegalStateException When the method can't be called
+     */
+    private static Object call(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch(IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        } catch(InvocationTargetException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.UUID;
+import org.bukkit.Material;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It checks that the hot path of onBlockFromTo() doesn't allocate: RuleTable.get(), AreaIndex.appliesTo(),
+ * Rule.appliesTo() and OutputTable.pick(). Bytes are counted by the JVM for the current thread, warm-up runs first
+ * so lookups are compiled, and allocations of the measurement itself are subtracted.
+ * @author LookyR
+ */
+public class AllocationTest {
+    
+    /**
+     * Calls of each measured method
+     */
+    private static final int CALLS = 100000;
+    
+    /**
+     * Measured runs of each method
+     */
+    private static final int RUNS = 5;
+    
+    /**
+     * Allocation counter of the JVM
+     */
+    private com.sun.management.ThreadMXBean threads;
+    
+    /**
+     * UUID of the World
+     */
+    private UUID world;
+    
+    /**
+     * Rule with one Area of each shape
+     */
+    private Rule rule;
+    
+    /**
+     * The Rule compiled for the World
+     */
+    private RuleTable table;
+    
+    /**
+     * Coordinates of blocks, 3 ints each, inside and outside of Areas
+     */
+    private int[] blocks;
+    
+    /**
+     * Creates Rules and blocks, skips the test when the JVM doesn't count allocated bytes
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        world = UUID.randomUUID();
+        Area[] areas = {
+            new Area(world, -64, 0, -64, 64, 128, 64, false),
+            new Area(world, 0, 0, 16, true),
+            new Area(world, new int[] {-32, 0, 32, 0}, new int[] {0, -32, 0, 32}, false),
+            new Area(world, 10000, -10000, 100000, 10000, false)
+        };
+        rule = new Rule(Material.STONE, Material.OBSIDIAN, false, areas, 0, 0);
+        table = new RuleTable(Collections.singletonList(rule), world);
+        blocks = new int[64 * 3];
+        for(int i = 0; i < blocks.length; i += 3) {
+            blocks[i] = (i * 37 % 256) - 128;
+            blocks[i + 1] = 64;
+            blocks[i + 2] = (i * 91 % 256) - 128;
+        }
+    }
+    
+    /**
+     * RuleTable.get() for hits and misses
+     */
+    @Test
+    public void tableGet() {
+        assertEquals(0, allocated(new Task() {
+            @Override
+            long run(int calls) {
+                long found = 0;
+                for(int i = 0; i < calls; i++)
+                    if(table.get(i % 2 == 0 ? Material.STONE.getId() : Material.AIR.getId(), i & 15) != null)
+                        found++;
+                return found;
+            }
+        }));
+    }
+    
+    /**
+     * AreaIndex.appliesTo() through RuleTable.Entry
+     */
+    @Test
+    public void entryAppliesTo() {
+        final RuleTable.Entry entry = table.get(Material.STONE.getId(), 0)[0];
+        assertEquals(0, allocated(new Task() {
+            @Override
+            long run(int calls) {
+                long applies = 0;
+                for(int i = 0; i < calls; i++) {
+                    int j = i % 64 * 3;
+                    if(entry.appliesTo(blocks[j], blocks[j + 1], blocks[j + 2]))
+                        applies++;
+                }
+                return applies;
+            }
+        }));
+    }
+    
+    /**
+     * Rule.appliesTo(), which looks the index up by World
+     */
+    @Test
+    public void ruleAppliesTo() {
+        assertEquals(0, allocated(new Task() {
+            @Override
+            long run(int calls) {
+                long applies = 0;
+                for(int i = 0; i < calls; i++) {
+                    int j = i % 64 * 3;
+                    if(rule.appliesTo(world, blocks[j], blocks[j + 1], blocks[j + 2]))
+                        applies++;
+                }
+                return applies;
+            }
+        }));
+    }
+    
+    /**
+     * OutputTable.pick() with several weighted outputs
+     */
+    @Test
+    public void outputPick() {
+        final OutputTable outputs = new OutputTable(new Material[] {Material.COBBLESTONE, Material.COAL_ORE, Material.IRON_ORE},
+                new byte[3], new double[] {70, 20, 10});
+        assertEquals(0, allocated(new Task() {
+            @Override
+            long run(int calls) {
+                long sum = 0;
+                for(int i = 0; i < calls; i++)
+                    sum += outputs.pick();
+                return sum;
+            }
+        }));
+    }
+    
+    /**
+     * Runs a task twice to warm up, then measures RUNS runs. The JVM itself may rarely allocate a few bytes
+     * in the thread (e.g. when it switches to compiled code), so the least allocating run counts;
+     * allocation in the measured code shows in every run.
+     * @param task Measured code
+     * @return Bytes allocated by the least allocating run
+     */
+    private long allocated(Task task) {
+        long id = Thread.currentThread().getId();
+        task.run(CALLS);
+        task.run(CALLS);
+        long least = Long.MAX_VALUE;
+        for(int i = 0; i < RUNS; i++) {
+            long start = threads.getThreadAllocatedBytes(id);
+            long overhead = threads.getThreadAllocatedBytes(id) - start;
+            start = threads.getThreadAllocatedBytes(id);
+            task.run(CALLS);
+            least = Math.min(least, threads.getThreadAllocatedBytes(id) - start - overhead);
+        }
+        return least;
+    }
+    
+    /**
+     * Measured code
+     */
+    private abstract static class Task {
+    
+        /**
+         * Calls the measured method
+         * @param calls Number of calls
+         * @return Anything computed from results, so calls are not eliminated
+         */
+        abstract long run(int calls);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.bukkit.Material;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It stresses state shared by event handlers of region-threaded servers: evaluation of Rules while snapshots
+ * are published, lazily built AreaIndexes, hit counters, quota buckets and Rule ids.
+ * Threads start at once and each check compares with the result computed by one thread.
+ * @author LookyR
+ */
+public class ConcurrencyTest {
+    
+    /**
+     * Number of concurrent threads
+     */
+    private static final int THREADS = 8;
+    
+    /**
+     * Iterations of each thread
+     */
+    private static final int ITERATIONS = 200000;
+    
+    /**
+     * Runs the threads
+     */
+    private ExecutorService executor;
+    
+    /**
+     * Starts the thread pool
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS + 1);
+    }
+    
+    /**
+     * Stops the thread pool
+     */
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Readers evaluate the current snapshot while a writer keeps adding and removing Rules and Worlds
+     */
+    @Test
+    public void evaluationWhilePublishing() throws Exception {
+        final UUID world = UUID.randomUUID(), other = UUID.randomUUID();
+        Area[] areas = {new Area(world, -64, -64, 63, 63, false), new Area(world, 0, 0, 16, true)};
+        final Rule fixed = new Rule(Material.STONE, Material.OBSIDIAN, false, areas, 0, 0);
+        Rule reference = new Rule(Material.STONE, Material.OBSIDIAN, false, areas, 0, 0);
+        final boolean[] expected = new boolean[256 * 256];
+        for(int x = -128; x < 128; x++)
+            for(int z = -128; z < 128; z++)
+                expected[(x + 128) << 8 | (z + 128)] = reference.appliesTo(world, x, 64, z);
+        final AtomicReference<RuleSet> current = new AtomicReference(
+                new RuleSet(Collections.singletonList(fixed), new HashSet<UUID>(), Collections.singleton(world)));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Future<Long>> readers = new ArrayList();
+        for(int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            readers.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws InterruptedException {
+                    start.await();
+                    long hits = 0;
+                    int random = seed * 0x9E3779B9 + 1;
+                    for(int i = 0; i < ITERATIONS; i++) {
+                        random = random * 1103515245 + 12345;
+                        int x = (random >>> 8 & 255) - 128, z = (random >>> 16 & 255) - 128;
+                        RuleTable table = current.get().getTable(world);
+                        assertTrue("Table of a loaded world is missing", table != null);
+                        RuleTable.Entry[] candidates = table.get(Material.STONE.getId(), 0);
+                        boolean applies = false;
+                        for(RuleTable.Entry entry : candidates)
+                            if(entry.rule == fixed && entry.appliesTo(x, 64, z))
+                                applies = true;
+                        assertEquals("Compiled rule at " + x + ", " + z, expected[(x + 128) << 8 | (z + 128)], applies);
+                        assertEquals("Rule at " + x + ", " + z, expected[(x + 128) << 8 | (z + 128)],
+                                fixed.appliesTo(world, x, 64, z));
+                        if(applies) {
+                            fixed.hits.increment();
+                            hits++;
+                        }
+                    }
+                    return hits;
+                }
+            }));
+        }
+        Future<Integer> writer = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                start.await();
+                int published = 0;
+                while(running.get()) {
+                    RuleSet set = current.get();
+                    Rule added = new Rule(Material.STONE, Material.COBBLESTONE, false,
+                            new Area[] {new Area(world, published % 100, 0, 8, false)}, 0, published % 3);
+                    set = set.withRule(added).withWorld(other);
+                    set.getTable(other);
+                    set = set.withoutRule(added).withoutWorld(other);
+                    current.set(set);
+                    published++;
+                }
+                return published;
+            }
+        });
+        start.countDown();
+        long hits = 0;
+        for(Future<Long> reader : readers)
+            hits += reader.get(2, TimeUnit.MINUTES);
+        running.set(false);
+        assertTrue("Writer didn't publish", writer.get(1, TimeUnit.MINUTES) > 0);
+        assertEquals(hits, fixed.hits.sum());
+    }
+    
+    /**
+     * Threads take tokens from shared buckets, no more than one thread alone could take may be taken
+     */
+    @Test
+    public void quotaUnderContention() throws Exception {
+        File single = File.createTempFile("lavawater", ".dat"), shared = File.createTempFile("lavawater", ".dat");
+        try {
+            final long now = System.currentTimeMillis() * 1000;
+            final UUID world = UUID.randomUUID();
+            QuotaFile file = new QuotaFile(single);
+            int expected = 0;
+            try {
+                for(int i = 0; i < 1000; i++)
+                    if(file.take(QuotaFile.key(world, 0, 0, 0), 600, QuotaFile.key(world, 0, 0, 1), 60, now))
+                        expected++;
+            } finally {
+                file.close();
+            }
+            final QuotaFile quotas = new QuotaFile(shared);
+            try {
+                final CountDownLatch start = new CountDownLatch(1);
+                ArrayList<Future<Integer>> takers = new ArrayList();
+                for(int t = 0; t < THREADS; t++) {
+                    final int seed = t;
+                    takers.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws InterruptedException {
+                            start.await();
+                            int taken = 0;
+                            for(int i = 0; i < 1000; i++) {
+                                if(quotas.take(QuotaFile.key(world, 0, 0, 0), 600, QuotaFile.key(world, 0, 0, 1), 60, now))
+                                    taken++;
+                                quotas.take(QuotaFile.key(world, seed, i, 2), 1, now);
+                            }
+                            return taken;
+                        }
+                    }));
+                }
+                start.countDown();
+                int taken = 0;
+                for(Future<Integer> taker : takers)
+                    taken += taker.get(1, TimeUnit.MINUTES);
+                assertEquals(expected, taken);
+            } finally {
+                quotas.close();
+            }
+        } finally {
+            single.delete();
+            shared.delete();
+        }
+    }
+    
+    /**
+     * Rules created by many threads at once get unique ids
+     */
+    @Test
+    public void uniqueRuleIds() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Future<List<Integer>>> creators = new ArrayList();
+        for(int t = 0; t < THREADS; t++)
+            creators.add(executor.submit(new Callable<List<Integer>>() {
+                @Override
+                public List<Integer> call() throws InterruptedException {
+                    start.await();
+                    ArrayList<Integer> ids = new ArrayList();
+                    for(int i = 0; i < 10000; i++)
+                        ids.add(new Rule(Material.STONE, Material.OBSIDIAN, false, new Area[0], 0, 0).id);
+                    return ids;
+                }
+            }));
+        start.countDown();
+        HashSet<Integer> ids = new HashSet();
+        for(Future<List<Integer>> creator : creators)
+            ids.addAll(creator.get(1, TimeUnit.MINUTES));
+        assertEquals(THREADS * 10000, ids.size());
+    }
+}
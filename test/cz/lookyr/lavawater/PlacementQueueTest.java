@@ -0,0 +1,67 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It checks packing of queued blocks in PlacementQueue and that each block is queued once.
+ * @author LookyR
+ */
+public class PlacementQueueTest {
+    
+    /**
+     * Every position without a required data value
+     */
+    @Test
+    public void positionWithoutData() {
+        for(int y = 0; y < 256; y++)
+            for(int x = -16; x < 16; x++)
+                for(int z = -16; z < 16; z++) {
+                    int position = PlacementQueue.position(x, y, z, -1);
+                    assertEquals(x & 15, PlacementQueue.x(position));
+                    assertEquals(y, PlacementQueue.y(position));
+                    assertEquals(z & 15, PlacementQueue.z(position));
+                    assertEquals(-1, PlacementQueue.data(position));
+                }
+    }
+    
+    /**
+     * Every data value, Y must not be affected by it
+     */
+    @Test
+    public void positionWithData() {
+        for(int data = 0; data < 16; data++)
+            for(int y = 0; y < 256; y++) {
+                int position = PlacementQueue.position(-1, y, 17, data);
+                assertEquals(15, PlacementQueue.x(position));
+                assertEquals(y, PlacementQueue.y(position));
+                assertEquals(1, PlacementQueue.z(position));
+                assertEquals(data, PlacementQueue.data(position));
+            }
+    }
+    
+    /**
+     * Every position of a chunk goes in once, the set full to half like in a Batch
+     */
+    @Test
+    public void insertOnce() {
+        int[] index = new int[1 << 17];
+        for(int block = 0; block < 1 << 16; block++)
+            assertTrue(PlacementQueue.insert(index, PlacementQueue.position(block, block >> 8, block >> 4, -1)));
+        for(int block = 0; block < 1 << 16; block++)
+            assertFalse(PlacementQueue.insert(index, block));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.bukkit.Material;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It checks that snapshots updated by withRule(), withRules() and withoutRule() equal snapshots built from scratch,
+ * and that Rules saved to config.yml keep their order of evaluation.
+ * @author LookyR
+ */
+public class RuleSetTest {
+    
+    /**
+     * Loaded Worlds
+     */
+    private final UUID first = UUID.randomUUID(), second = UUID.randomUUID();
+    
+    /**
+     * Random changes, compared after each one
+     */
+    @Test
+    public void incrementalEqualsRebuilt() {
+        Random random = new Random(1);
+        RuleSet set = new RuleSet(Collections.<Rule>emptyList(), new HashSet<UUID>(), Arrays.asList(first, second));
+        for(int step = 0; step < 500; step++) {
+            ArrayList<Rule> expected = new ArrayList(set.rules);
+            switch(random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Rule rule = rule(random);
+                    expected = replace(expected, Collections.singletonList(rule));
+                    set = set.withRule(rule);
+                    break;
+                case 2:
+                    ArrayList<Rule> added = new ArrayList();
+                    for(int i = random.nextInt(5); i >= 0; i--)
+                        added.add(rule(random));
+                    expected = replace(expected, added);
+                    set = set.withRules(added);
+                    break;
+                default:
+                    if(set.rules.isEmpty())
+                        continue;
+                    Rule removed = set.rules.get(random.nextInt(set.rules.size()));
+                    expected.remove(removed);
+                    set = set.withoutRule(removed);
+            }
+            assertSnapshot(set, new RuleSet(expected, new HashSet<UUID>(), Arrays.asList(first, second)));
+        }
+    }
+    
+    /**
+     * Equal-priority Rules with overlapping inputs can't be grouped by input without changing their order
+     */
+    @Test
+    public void savedOrder() {
+        Rule a = new Rule("stone", "cobblestone", "false", Collections.<String>emptyList(), 0, 0, null);
+        Rule b = new Rule("*", "gravel", "false", Collections.<String>emptyList(), 0, 0, null);
+        Rule c = new Rule("stone", "coal_ore", "false", Collections.<String>emptyList(), 0, 0, null);
+        Rule d = new Rule("stone", "iron_ore", "false", Collections.<String>emptyList(), 0, 5, null);
+        List<Rule> mixed = Arrays.asList(a, b, c);
+        assertFalse(ConfigSaver.keepsOrder(ConfigSaver.group(mixed), mixed));
+        List<Rule> prioritized = new RuleSet(Arrays.asList(a, b, d), new HashSet<UUID>(), Collections.<UUID>emptyList()).rules;
+        assertTrue(ConfigSaver.keepsOrder(ConfigSaver.group(prioritized), prioritized));
+    }
+    
+    /**
+     * Rules created again (e.g. after a restart) get new ids but keep slotHash, which keys their quota buckets
+     */
+    @Test
+    public void slotHashIsStable() {
+        Rule before = new Rule(Material.STONE, Material.OBSIDIAN, false,
+                new Area[] {new Area(first, 0, 0, 100, 100, false), new Area(second, true)}, 60, 0);
+        Rule after = new Rule(Material.STONE, Material.GRAVEL, true,
+                new Area[] {new Area(first, 0, 0, 100, 100, false), new Area(second, true)}, 60, 2);
+        assertFalse(before.id == after.id);
+        assertEquals(before.slotHash, after.slotHash);
+        assertFalse(before.slotHash == new Rule(Material.STONE, Material.OBSIDIAN, false, new Area[0], 60, 0).slotHash);
+    }
+    
+    /**
+     * Creates a random Rule, many have the same slot
+     * @param random
+     * @return New Rule
+     */
+    private Rule rule(Random random) {
+        int priority = random.nextInt(3);
+        switch(random.nextInt(4)) {
+            case 0:
+                String[] groups = {"*", "wool:14", "wool:3", "wool"};
+                return new Rule(groups[random.nextInt(groups.length)], "obsidian", "false", Collections.<String>emptyList(),
+                        0, priority, null);
+            default:
+                Material[] inputs = {Material.STONE, Material.SAND, Material.GRAVEL, Material.WOOL};
+                int x = random.nextInt(3) * 100;
+                Area area = random.nextInt(4) == 0 ? new Area(first, x, 0, x + 10, 10, false) : new Area(null, x, 0, x + 10, 10, false);
+                return new Rule(inputs[random.nextInt(inputs.length)], Material.OBSIDIAN, false, new Area[] {area}, 0, priority);
+        }
+    }
+    
+    /**
+     * Adds Rules the way RuleSet did before updates were incremental
+     * @param rules Current Rules
+     * @param added New Rules, each replacing the one with the same slot
+     * @return Rules in order of adding
+     */
+    private static ArrayList<Rule> replace(List<Rule> rules, List<Rule> added) {
+        HashMap<String, Rule> last = new HashMap();
+        for(Rule rule : added)
+            last.put(rule.getSlot(), rule);
+        ArrayList<Rule> list = new ArrayList();
+        for(Rule rule : rules)
+            if(!last.containsKey(rule.getSlot()))
+                list.add(rule);
+        for(Rule rule : added)
+            if(last.get(rule.getSlot()) == rule)
+                list.add(rule);
+        return list;
+    }
+    
+    /**
+     * Compares snapshots: Rules, indexes and tables of both Worlds
+     * @param actual Updated snapshot
+     * @param expected Snapshot built from scratch
+     */
+    private void assertSnapshot(RuleSet actual, RuleSet expected) {
+        assertRules(expected.rules, actual.rules);
+        for(Rule rule : expected.rules) {
+            assertSame(rule, actual.getRule(rule.id));
+            assertRules(expected.getRules(rule.inputKey()), actual.getRules(rule.inputKey()));
+        }
+        for(UUID world : Arrays.asList(first, second)) {
+            RuleTable a = actual.getTable(world), e = expected.getTable(world);
+            assertEquals(e.isEmpty(), a.isEmpty());
+            for(int type = 0; type < 512; type++)
+                for(int data = 0; data < 16; data++)
+                    assertRules(rules(e.get(type, data)), rules(a.get(type, data)));
+        }
+    }
+    
+    /**
+     * Compares lists of Rules by identity
+     * @param expected
+     * @param actual
+     */
+    private static void assertRules(List<Rule> expected, List<Rule> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++)
+            assertSame(expected.get(i), actual.get(i));
+    }
+    
+    /**
+     * Used in assertSnapshot()
+     * @param entries Result of RuleTable.get()
+     * @return Rules of the entries, empty if entries is null
+     */
+    private static List<Rule> rules(RuleTable.Entry[] entries) {
+        ArrayList<Rule> list = new ArrayList();
+        if(entries != null)
+            for(RuleTable.Entry entry : entries)
+                list.add(entry.rule);
+        return list;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Creative Commons License
+ *
+ * LavaWater by LookyR is licensed under a Creative Commons
+ * Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * Based on a work at https://github.com/LookyR/LavaWater.
+ *
+ * See http://creativecommons.org/licenses/by-nc-sa/4.0/
+ */
+
+package cz.lookyr.lavawater;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.Material;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * This class is part of LavaWater Bukkit plugin.
+ * It checks that Rules read from rules.dat equal the written ones, with Areas of every type and weighted outputs,
+ * and that the file can be replaced right after it was read.
+ * @author LookyR
+ */
+public class SnapshotFileTest {
+    
+    /**
+     * Hash of config.yml the snapshot is written for
+     */
+    private static final byte[] HASH = new byte[20];
+    
+    /**
+     * Logger for warnings about damaged snapshots
+     */
+    private static final Logger LOGGER = Logger.getLogger(SnapshotFileTest.class.getName());
+    
+    /**
+     * The snapshot
+     */
+    private File file;
+    
+    /**
+     * Creates the snapshot file
+     */
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("lavawater", ".dat");
+    }
+    
+    /**
+     * Deletes the snapshot file
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    /**
+     * Everything written is read back, then the file is written again in place
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        UUID world = UUID.randomUUID();
+        ConfigLoader config = new ConfigLoader();
+        config.unloadedChunks = ChunkPolicy.values()[ChunkPolicy.values().length - 1];
+        config.batchPlacement = true;
+        config.chunkQuota = 12;
+        config.worlds.add(world);
+        config.rules.add(new Rule(Material.STONE, Material.OBSIDIAN, true, new Area[0], 0, 0));
+        config.rules.add(new Rule(Material.SAND, Material.GRAVEL, false, new Area[] {
+            new Area(world, -64, 5, -64, 64, 128, 64, true),
+            new Area(null, 0, 0, 100, 100, false),
+            new Area(world, false),
+            new Area(world, new int[] {-32, 0, 32, 0}, new int[] {0, -32, 0, 32}, true),
+            new Area(null, 10, -10, 16, false),
+            new Area(world, Regions.get("local", "spawn"), true)
+        }, 30, 2));
+        MaterialSet wool = new MaterialSet("colored", Arrays.asList(Material.WOOL, Material.STAINED_CLAY));
+        OutputTable outputs = new OutputTable(new Material[] {Material.COBBLESTONE, Material.WOOL},
+                new byte[] {0, 14}, new double[] {70, 2.5});
+        config.rules.add(new Rule(wool, 14, outputs, "colored:14", "cobblestone*70, wool:14*2.5", true, new Area[0], 0, -1));
+        SnapshotFile.write(file, HASH, config);
+        ConfigLoader read = SnapshotFile.read(file, HASH, LOGGER);
+        assertEquals(config.unloadedChunks, read.unloadedChunks);
+        assertEquals(config.batchPlacement, read.batchPlacement);
+        assertEquals(config.chunkQuota, read.chunkQuota);
+        assertEquals(config.worlds, read.worlds);
+        assertEquals(config.rules.size(), read.rules.size());
+        for(int i = 0; i < config.rules.size(); i++) {
+            Rule expected = config.rules.get(i), actual = read.rules.get(i);
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.inputString, actual.inputString);
+            assertEquals(expected.outputString, actual.outputString);
+            assertEquals(expected.inputs.materials(), actual.inputs.materials());
+            for(int x = -80; x < 80; x += 3)
+                for(int z = -80; z < 80; z += 3)
+                    assertEquals(expected.appliesTo(world, x, 64, z), actual.appliesTo(world, x, 64, z));
+        }
+        SnapshotFile.write(file, HASH, read);
+        assertEquals(config.rules.size(), SnapshotFile.read(file, HASH, LOGGER).rules.size());
+    }
+    
+    /**
+     * Snapshot of other config.yml is ignored
+     */
+    @Test
+    public void otherHash() throws Exception {
+        SnapshotFile.write(file, HASH, new ConfigLoader());
+        byte[] other = HASH.clone();
+        other[0] = 1;
+        assertNull(SnapshotFile.read(file, other, LOGGER));
+    }
+}